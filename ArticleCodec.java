@@ -0,0 +1,80 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+public class ArticleCodec {
+    // static helpers only
+    private ArticleCodec() {}
+    
+    /* 
+     * write one article's extracted fields in a compact binary form (read back by read())
+     * strings are length-prefixed UTF-8 (not writeUTF, so an abstract may be longer than 64 KB), arrays count-prefixed
+     * takes in: DataOutput out, ArticleExtractor.Fields fields
+     */
+    public static void write(DataOutput out, ArticleExtractor.Fields fields) throws IOException {
+        writeString(out, fields.pdfSource());
+        writeString(out, fields.title());
+        writeStrings(out, fields.authors());
+        writeString(out, fields.abstractText());
+        writeStrings(out, fields.keywords());
+        out.writeInt(fields.volume());
+        out.writeInt(fields.year());
+        out.writeInt(fields.startPage());
+        out.writeInt(fields.endPage());
+    }
+    
+    /* 
+     * read fields written by write()
+     * takes in: DataInput in
+     * returns: ArticleExtractor.Fields
+     */
+    public static ArticleExtractor.Fields read(DataInput in) throws IOException {
+        return new ArticleExtractor.Fields(readString(in), readString(in), readStrings(in), readString(in),
+                                           readStrings(in), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+    
+    // int byte count, then the UTF-8 bytes
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    // String written by writeString
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        
+        if (length < 0) {
+            throw new IOException("negative string length " + length);
+        }
+        
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    // int count, then each String
+    private static void writeStrings(DataOutput out, String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+    
+    // String[] written by writeStrings
+    private static String[] readStrings(DataInput in) throws IOException {
+        int count = in.readInt();
+        
+        if (count < 0) {
+            throw new IOException("negative array length " + count);
+        }
+        
+        String[] strings = new String[count];
+        
+        for (int i = 0; i < count; i++) {
+            strings[i] = readString(in);
+        }
+        
+        return strings;
+    }
+}
@@ -0,0 +1,487 @@
+import java.io.BufferedReader;
+import java.util.*;
+import java.util.regex.*;
+
+public class ArticleExtractor {
+    private static final Pattern PAGES_PATTERN = Pattern.compile(String.format("(%s|%s|%s|%s|%s)",
+                                                                          "pp \\d+-+\\d+",
+                                                                          "pp\\d+-+\\d+",
+                                                                          "pp[.] \\d+-+\\d+",
+                                                                          "pp[.]\\d+-+\\d+",
+                                                                          "pp [.]\\d+-+\\d+"));
+    private static final Pattern PAGE_NUMS_PATTERN = Pattern.compile("\\d+-+\\d+");
+    
+    // where each field's little state machine is; every field walks SEEK -> (SKIP) -> COLLECT -> DONE
+    private enum State { SEEK, SKIP, START, COLLECT, SEEK_CLASSIF, COLLECT_CLASSIF, DONE }
+    
+    private String pdfPrimary, pdfFallback;
+    
+    private State titleState = State.SEEK;
+    private final StringBuilder titleSb = new StringBuilder();
+    
+    private State authorState = State.SEEK;
+    private final StringBuilder authorSb = new StringBuilder();
+    
+    private State abstractState = State.SEEK;
+    private final StringBuilder abstractSb = new StringBuilder();
+    private final StringBuilder classifSb = new StringBuilder();
+    
+    private State keywordState = State.SEEK;
+    private final StringBuilder keywordSb = new StringBuilder();
+    
+    private State issueState = State.SEEK;
+    private IssueIdent issue;
+    
+    private String pagesMatch;
+    
+    /* 
+     * walk htmlLines once, handing every line to each field's state machine, and build the article's fields
+     * gives exactly what the old one-scan-per-field init* methods in Article gave:
+     *    each machine starts at the top of the page & looks for the same markers in the same order,
+     *    they just all advance on the same line instead of each re-reading the page
+     * stops early once every field is complete; the time taken goes into the "article.extract" histogram
+     * throws NoSuchElementException if the page ends before a field's markers are found (as the old scans did)
+     * takes in: Iterable<String> htmlLines (already stripped)
+     * returns: Fields record
+     */
+    public static Fields extract(Iterable<String> htmlLines) {
+        long start = System.nanoTime();
+        ArticleExtractor extractor = new ArticleExtractor();
+        
+        for (String line : htmlLines) {
+            if (extractor.feed(line)) {
+                break;
+            }
+        }
+        
+        Fields fields = extractor.finish();
+        Metrics.observe("article.extract", System.nanoTime() - start);
+        return fields;
+    }
+    
+    /* 
+     * same as extract(Iterable), reading the page a line at a time as it is decoded (see Fetcher.getPage)
+     * only the current line is held; lines after the last field are never read
+     * (when streamed from the network, "article.extract" includes waiting for the page to arrive)
+     * takes in: BufferedReader page
+     * returns: Fields record
+     */
+    public static Fields extract(BufferedReader page) {
+        return extract(() -> page.lines().map(String::strip).iterator());
+    }
+    
+    /* 
+     * walk htmlLines only as far as the issue line & read the volume number off it
+     * takes in: Iterable<String> htmlLines (already stripped)
+     * returns: int volume
+     */
+    public static int extractVolume(Iterable<String> htmlLines) {
+        ArticleExtractor extractor = new ArticleExtractor();
+        
+        for (String line : htmlLines) {
+            extractor.feedIssue(line);
+            
+            if (extractor.issueState == State.DONE) {
+                return extractor.issue.volume();
+            }
+        }
+        
+        throw new NoSuchElementException("no issue line (Vol. N) after Keywords:");
+    }
+    
+    /* 
+     * advance every unfinished field by one line
+     * takes in: String line
+     * returns: true once nothing more can change, so the rest of the page can be skipped
+     */
+    private boolean feed(String line) {
+        feedPdf(line);
+        feedTitle(line);
+        feedAuthors(line);
+        feedAbstract(line);
+        feedKeywords(line);
+        feedIssue(line);
+        feedPages(line);
+        
+        return this.pdfPrimary != null && this.pagesMatch != null
+            && this.titleState == State.DONE && this.authorState == State.DONE
+            && this.abstractState == State.DONE && this.keywordState == State.DONE
+            && this.issueState == State.DONE;
+    }
+    
+    /* 
+     * first line (other than the citation_pdf_url meta tag) with "<digit>.pdf" in it is the pdf link
+     * until one turns up, also remember the first "<digit>.dvi" or "<digit>.ps" link as a fallback
+     */
+    private void feedPdf(String line) {
+        if (this.pdfPrimary != null) {
+            return;
+        }
+        
+        if (!line.contains("citation_pdf_url") && digitBefore(line, ".pdf")) {
+            this.pdfPrimary = line.split("\"")[1];
+        }
+        else if (this.pdfFallback == null && (digitBefore(line, ".dvi") || digitBefore(line, ".ps"))) {
+            this.pdfFallback = line.split("\"")[1].replaceAll("[.](dvi|ps)", ".pdf");
+        }
+    }
+    
+    // title: lines after the first <h1> line, up to the first line with </h1>
+    private void feedTitle(String line) {
+        switch (this.titleState) {
+            case SEEK -> {
+                if (line.contains("<h1>")) {
+                    this.titleState = State.COLLECT;
+                }
+            }
+            case COLLECT -> {
+                if (line.contains("</h1>")) {
+                    this.titleState = State.DONE;
+                }
+                else {
+                    this.titleSb.append(line).append(" ");
+                }
+            }
+            default -> {}
+        }
+    }
+    
+    // authors: after the first </h1> line skip blank & <h2> lines, then collect until <h2> or </h2>
+    private void feedAuthors(String line) {
+        switch (this.authorState) {
+            case SEEK -> {
+                if (line.contains("</h1>")) {
+                    this.authorState = State.SKIP;
+                }
+            }
+            case SKIP -> {
+                if (!line.equals("") && !line.contains("<h2>")) {
+                    this.authorState = State.COLLECT;
+                    feedAuthors(line);
+                }
+            }
+            case COLLECT -> {
+                if (line.contains("<h2>") || line.contains("</h2>")) {
+                    this.authorState = State.DONE;
+                }
+                else {
+                    this.authorSb.append(line).append(" ");
+                }
+            }
+            default -> {}
+        }
+    }
+    
+    /* 
+     * abstract: from the first </h2> line find a <p> line, then collect the lines after it until "Keywords:"
+     * classification: after that Keywords: line skip to a line with <p> (but not a bare </p>),
+     * then collect from it until a bare </p> line
+     */
+    private void feedAbstract(String line) {
+        switch (this.abstractState) {
+            case SEEK -> {
+                if (line.contains("</h2>")) {
+                    this.abstractState = State.SKIP;
+                    feedAbstract(line);
+                }
+            }
+            case SKIP -> {
+                if (line.contains("<p>")) {
+                    this.abstractState = State.COLLECT;
+                }
+            }
+            case COLLECT -> {
+                if (line.contains("Keywords:")) {
+                    this.abstractState = State.SEEK_CLASSIF;
+                }
+                else {
+                    this.abstractSb.append(line).append(" ");
+                }
+            }
+            case SEEK_CLASSIF -> {
+                if (line.contains("<p>") && !line.equals("</p>")) {
+                    this.abstractState = State.COLLECT_CLASSIF;
+                    feedAbstract(line);
+                }
+            }
+            case COLLECT_CLASSIF -> {
+                if (line.equals("</p>")) {
+                    this.abstractState = State.DONE;
+                }
+                else {
+                    this.classifSb.append(line).append(" ");
+                }
+            }
+            default -> {}
+        }
+    }
+    
+    /* 
+     * keywords: from the first Keywords: line (or the line after, if it ends with "Keywords:")
+     * up to the first line with </p>; the starting line is taken twice unless it holds the </p> itself
+     */
+    private void feedKeywords(String line) {
+        switch (this.keywordState) {
+            case SEEK -> {
+                if (line.contains("Keywords:")) {
+                    this.keywordState = State.START;
+                    
+                    if (!line.endsWith("Keywords:")) {
+                        feedKeywords(line);
+                    }
+                }
+            }
+            case START -> {
+                this.keywordSb.append(line).append(" ");
+                
+                if (line.contains("</p>")) {
+                    this.keywordState = State.DONE;
+                }
+                else {
+                    this.keywordSb.append(line).append(" ");
+                    this.keywordState = State.COLLECT;
+                }
+            }
+            case COLLECT -> {
+                if (line.contains("</p>")) {
+                    this.keywordState = State.DONE;
+                }
+                else {
+                    this.keywordSb.append(line).append(" ");
+                }
+            }
+            default -> {}
+        }
+    }
+    
+    // issue: from the first Keywords: line (or the line after, if it ends with "Keywords:") the first line with "Vol."
+    private void feedIssue(String line) {
+        switch (this.issueState) {
+            case SEEK -> {
+                if (line.contains("Keywords:")) {
+                    this.issueState = State.COLLECT;
+                    
+                    if (!line.endsWith("Keywords:")) {
+                        feedIssue(line);
+                    }
+                }
+            }
+            case COLLECT -> {
+                if (line.contains("Vol.")) {
+                    this.issue = parseIssueIdent(line);
+                    this.issueState = State.DONE;
+                }
+            }
+            default -> {}
+        }
+    }
+    
+    // pages: first "pp X-Y" style match anywhere on the page (cheap "pp" check before the regex)
+    private void feedPages(String line) {
+        if (this.pagesMatch == null && line.contains("pp")) {
+            Matcher matcher = PAGES_PATTERN.matcher(line);
+            
+            if (matcher.find()) {
+                this.pagesMatch = matcher.group();
+            }
+        }
+    }
+    
+    /* 
+     * check every field finished, then clean up the collected text the same way Article always has
+     * returns: Fields record
+     */
+    private Fields finish() {
+        require(this.titleState, "title (<h1> ... </h1>)");
+        require(this.authorState, "authors (</h1> ... <h2>)");
+        require(this.abstractState, "abstract (<p> ... Keywords: <p> ... </p>)");
+        require(this.keywordState, "keywords (Keywords: ... </p>)");
+        require(this.issueState, "issue line (Vol. N)");
+        
+        String pdfSource = this.pdfPrimary != null ? this.pdfPrimary : this.pdfFallback;
+        String title = cleanTitle();
+        PageRange pages = cleanPages(title);
+        
+        return new Fields(pdfSource, title, cleanAuthors(), cleanAbstract(), cleanKeywords(),
+                          this.issue.volume(), this.issue.year(), pages.startPage(), pages.endPage());
+    }
+    
+    // the page ran out before state reached DONE
+    private static void require(State state, String what) {
+        if (state != State.DONE) {
+            throw new NoSuchElementException("page ended before " + what + " was complete");
+        }
+    }
+    
+    /* 
+     * init String comprises: replacing any whitespace surrounding <p> or </> with " ", then stripChars with " ," substring
+     * returns: hard coded title corrections from TITLE_CORRECTIONS, getOrDefault gets val associated with key init or replaces with init val
+     */
+    private String cleanTitle() {
+        String init = TextNormalizer.stripChars(
+            TextNormalizer.collapseWhitespaceAndParagraphs(this.titleSb.toString()), " ,");
+        return Corrections.TITLE_CORRECTIONS.getOrDefault(init, init);
+    }
+    
+    /* 
+     * authorList String[] is created by replacing " and " with "," & split on ","
+     * for strings in in authorList:
+     *    1. create author string from stripChars() on " ," substrings, replacing all extra whitespaces with "", adding a space after "." between two letters.
+     * if author is not an "":
+     *    1. if author string is "Jr.", replace last val of init with ", Jr." OR if not just add to init
+     * return: converted init to an Array of Strings
+     */
+    private String[] cleanAuthors() {
+        String[] authorList = TextNormalizer.split(this.authorSb.toString().replace(" and ", ","), ",");
+        LinkedList<String> init = new LinkedList<>();
+        
+        for (String s : authorList) {
+            String author = TextNormalizer.spaceAfterInitials(
+                TextNormalizer.collapseWhitespace(TextNormalizer.stripChars(s, " ,")));
+            
+            if (!author.equals("")) {
+                
+                if (author.equals("Jr.")) {
+                    init.add(init.removeLast() + ", Jr.");
+                }
+                else {
+                    init.add(author);
+                }
+            }
+        }
+        
+        return init.toArray(String[]::new);
+    }
+    
+    /* 
+     * abstractInit: replacing "<p>" or "</p>" with " ", strip whitespaces, replacing any whitespaces with " ",
+     * & if a <br> tag is surrounded by whitespace or adjacent with whitespace, replace with single <br>
+     * classifInit: replacing "<p>" or "</p>" with " ", strip whitespaces, replacing ", with ", " & any whitespaces with a singular " "
+     * if classifInit does not end with ".", add "."
+     * returns: abstractInit and classifInit each surrounded with opening and closing <p> tags
+     */
+    private String cleanAbstract() {
+        String abstractInit = TextNormalizer.tightenBreaks(TextNormalizer.collapseWhitespace(
+            TextNormalizer.paragraphsToSpaces(this.abstractSb.toString()).strip()));
+        
+        String classifInit = TextNormalizer.collapseWhitespace(
+            TextNormalizer.paragraphsToSpaces(this.classifSb.toString()).strip().replace(",", ", "));
+        
+        if (!classifInit.endsWith(".")) {
+            classifInit += ".";
+        }
+        
+        return new StringBuilder()
+            .append("<p>")
+            .append(abstractInit)
+            .append("</p><p>")
+            .append(classifInit)
+            .append("</p>")
+            .toString();
+    }
+    
+    /* 
+     * create an Array of Strings `keywordList` from splitting the collected text at either the ',' or ';'
+     * for each String in keywordList:
+     *    1. remove all subtrings of "Keywords:", or "<p>", or "</p>"
+     *    2. use stripChars() to remove any occurrences of " ." from the beginning and end of string
+     *    3. replace any whitespace chars with " "
+     *    4. if a hyphen is surrounded by whitespace or adjacent with whitespace, replace with single hyphen
+     * if a keyword is not "" & if our LinkedList is both !empty && its last node ends with "-"; add the last node + keyword to the LinkedList
+     * else: just add the keyword
+     * returns string[]
+     */
+    private String[] cleanKeywords() {
+        String[] keywordList = TextNormalizer.split(this.keywordSb.toString(), ",;");
+        LinkedList<String> init = new LinkedList<>();
+        
+        for (String s : keywordList) {
+            String keyword = TextNormalizer.joinHyphens(TextNormalizer.collapseWhitespace(
+                TextNormalizer.stripChars(TextNormalizer.removeTokens(s, "Keywords:", "<p>", "</p>"), " .")));
+            
+            if (!keyword.equals("")) {
+                if (!init.isEmpty() && init.getLast().endsWith("-")) {
+                    init.add(init.removeLast() + keyword);
+                }
+                else {
+                    init.add(keyword);
+                }
+            }
+        }
+        
+        return init.toArray(String[]::new);
+    }
+    
+    /* 
+     * PAGE_CORRECTIONS entry for title if there is one,
+     * otherwise the first & last number of the "X-Y" part of the pages match
+     * takes in: String title
+     * returns: PageRange record
+     */
+    private PageRange cleanPages(String title) {
+        if (Corrections.PAGE_CORRECTIONS.containsKey(title)) {
+            return Corrections.PAGE_CORRECTIONS.get(title);
+        }
+        
+        if (this.pagesMatch == null) {
+            throw new NoSuchElementException("no page range (pp X-Y) on page");
+        }
+        
+        Matcher pageMatch = PAGE_NUMS_PATTERN.matcher(this.pagesMatch);
+        pageMatch.find();
+        String[] pageList = pageMatch.group().split("-");
+        return new PageRange(Integer.parseInt(pageList[0]),
+                             Integer.parseInt(pageList[pageList.length - 1]));
+    }
+    
+    /* 
+     * iterator issueInfo splits the issue line at blank space, skipping elems (after stripChars " ,") til "Vol."
+     * volumeInit is the next elem parsed as an Int, the one after it the year
+     * (if the year starts with "CT" start parsing as Int at index 3)
+     * takes in: String line
+     * returns: IssueIdent record
+     */
+    private static IssueIdent parseIssueIdent(String line) {
+        Iterator<String> issueInfo = Arrays.asList(line.split(" ")).iterator();
+        String elem = TextNormalizer.stripChars(issueInfo.next(), " ,");
+        
+        while (!elem.equals("Vol.")) {
+            elem = TextNormalizer.stripChars(issueInfo.next(), " ,");
+        }
+        
+        int volumeInit = Integer.parseInt(TextNormalizer.stripChars(issueInfo.next(), " ,"));
+        int yearInit;
+        String yearElem = TextNormalizer.stripChars(issueInfo.next(), " ,");
+        
+        if (yearElem.startsWith("CT")) {
+            yearInit = Integer.parseInt(yearElem.substring(3));
+        }
+        else {
+            yearInit = Integer.parseInt(yearElem);
+        }
+        
+        return new IssueIdent(volumeInit, yearInit);
+    }
+    
+    /* 
+     * true if text holds suffix right after a digit (same as text.matches(".*\\d" + suffix + ".*"), without a regex)
+     * takes in: String text, String suffix
+     */
+    private static boolean digitBefore(String text, String suffix) {
+        int i = text.indexOf(suffix, 1);
+        
+        while (i > 0) {
+            if (Character.isDigit(text.charAt(i - 1)) && text.charAt(i - 1) < 128) {
+                return true;
+            }
+            
+            i = text.indexOf(suffix, i + 1);
+        }
+        
+        return false;
+    }
+    
+    // everything Article needs from an abstract page
+    public record Fields(String pdfSource, String title, String[] authors, String abstractText,
+                         String[] keywords, int volume, int year, int startPage, int endPage) {}
+}
@@ -0,0 +1,464 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.regex.*;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.*;
+import org.xml.sax.*;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class ArticleIndex {
+    public static final Pattern VOLUME_FILE = Pattern.compile("TAC_vol(\\d+)\\.xml");
+    private static final Pattern CLAUSE = Pattern.compile(
+        "(?:(title|author|keyword|abstract):)?(?:\"([^\"]*)\"?|(\\S+))");
+    
+    private final EnumMap<Field, TreeMap<String, Postings>> postings = new EnumMap<>(Field.class);
+    private final ArrayList<Doc> docs = new ArrayList<>();
+    private final BitSet live = new BitSet();
+    private final TreeMap<Integer, int[]> volumes = new TreeMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /* 
+     * Constructor for ArticleIndex class
+     * in-memory inverted index over the articles of a journal: for each field (title, authors, keywords, abstract),
+     * each token (Tokenizer) maps to its posting list, the ids of the articles holding it, in ascending order
+     * the terms of a field are kept sorted, so a prefix (categor*) is one range of them
+     * articles are added & replaced a volume at a time: a volume's old articles are only marked dead (their ids
+     * stay in the posting lists & are masked out of results), & once dead ids outnumber live ones the postings are
+     * rebuilt from the live articles; so regenerating a volume costs about as much as indexing it
+     * searches run concurrently with each other; a volume being replaced holds them up while it is indexed
+     */
+    public ArticleIndex() {
+        for (Field field : Field.values()) {
+            this.postings.put(field, new TreeMap<>());
+        }
+    }
+    
+    /* 
+     * index of every TAC_volNN.xml volume file in dir (as the export writes them)
+     * a file that can't be read or parsed is reported (on stderr) & its volume left out, the rest are still indexed
+     * takes in: Path dir
+     * returns: ArticleIndex
+     */
+    public static ArticleIndex load(Path dir) throws IOException {
+        ArticleIndex index = new ArticleIndex();
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (!VOLUME_FILE.matcher(file.getFileName().toString()).matches()) {
+                    continue;
+                }
+                
+                try {
+                    index.loadVolume(file);
+                }
+                catch (IOException | RuntimeException e) {
+                    System.err.printf("could not index volume %d, left out: %s%n", volumeOf(file), e);
+                }
+            }
+        }
+        
+        return index;
+    }
+    
+    /* 
+     * (re)index the volume file at file, replacing whatever the index held for that volume
+     * takes in: Path file (named TAC_volNN.xml)
+     * returns: int number of articles indexed
+     */
+    public int loadVolume(Path file) throws IOException {
+        List<Doc> docs = readVolume(file);
+        putVolume(volumeOf(file), docs);
+        return docs.size();
+    }
+    
+    // (re)index volume from its parsed Articles, replacing whatever the index held for it
+    public void putVolume(Volume volume) {
+        ArrayList<Doc> docs = new ArrayList<>();
+        
+        for (Article article : volume.getArticles()) {
+            docs.add(Doc.of(article));
+        }
+        
+        putVolume(volume.getVolume(), docs);
+    }
+    
+    /* 
+     * replace the articles of volume with docs (an empty list leaves the volume out of the index)
+     * takes in: int volume, List<Doc> docs
+     */
+    public void putVolume(int volume, List<Doc> docs) {
+        this.lock.writeLock().lock();
+        
+        try {
+            drop(volume);
+            int[] ids = new int[docs.size()];
+            
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = add(docs.get(i));
+            }
+            
+            if (ids.length > 0) {
+                this.volumes.put(volume, ids);
+            }
+            
+            int dead = this.docs.size() - this.live.cardinality();
+            
+            if (dead > 256 && dead > this.live.cardinality()) {
+                compact();
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+    
+    // take volume out of the index
+    public void removeVolume(int volume) {
+        putVolume(volume, List.of());
+    }
+    
+    /* 
+     * the articles matching query, in volume & page order
+     * a query is clauses separated by spaces, all of which an article must match:
+     *    word: the word (tokenized like the fields; see Tokenizer) in any field; stop words are ignored
+     *    field:word: only in that field (title, author, keyword or abstract)
+     *    "several words" / field:"several words": all of them, in the same field
+     *    prefix*: any token of the field starting with prefix (not stemmed)
+     * takes in: String query, int limit (max hits returned)
+     * returns: Result (the number of matches & up to limit of them)
+     */
+    public Result search(String query, int limit) {
+        this.lock.readLock().lock();
+        
+        try {
+            BitSet matches = (BitSet) this.live.clone();
+            boolean any = false;
+            Matcher clause = CLAUSE.matcher(query);
+            
+            while (clause.find()) {
+                String name = clause.group(1);
+                String words = clause.group(2) != null ? clause.group(2) : clause.group(3);
+                Field only = name == null ? null : Field.valueOf(name.toUpperCase(Locale.ROOT));
+                boolean prefix = clause.group(3) != null && words.endsWith("*");
+                
+                // a stop word or stray letter on its own is no clause; an unfielded one is judged as text, so "of"
+                // is skipped rather than looked for among the authors (names have no stop words)
+                Field judge = only == null ? Field.TITLE : only;
+                
+                if (Tokenizer.tokens(words, judge.isText() && !prefix).isEmpty()) {
+                    continue;
+                }
+                
+                BitSet clauseMatches = new BitSet();
+                
+                for (Field field : Field.values()) {
+                    if (only == null || only == field) {
+                        clauseMatches.or(match(field, Tokenizer.tokens(words, field.isText() && !prefix), prefix));
+                    }
+                }
+                
+                matches.and(clauseMatches);
+                any = true;
+            }
+            
+            if (!any) {
+                return new Result(0, List.of());
+            }
+            
+            ArrayList<Doc> hits = new ArrayList<>(matches.cardinality());
+            
+            for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+                hits.add(this.docs.get(id));
+            }
+            
+            hits.sort(Comparator.comparingInt(Doc::volume).thenComparingInt(Doc::startPage));
+            return new Result(hits.size(), List.copyOf(hits.subList(0, Math.min(limit, hits.size()))));
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+    
+    // how many volumes, articles & distinct tokens (summed over the fields) the index holds
+    public Stats stats() {
+        this.lock.readLock().lock();
+        
+        try {
+            int terms = this.postings.values().stream().mapToInt(TreeMap::size).sum();
+            return new Stats(this.volumes.size(), this.live.cardinality(), terms);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+    
+    /* 
+     * the articles of the volume file at file, in the order they are in it
+     * read with a plain SAX parser (no DTDs or external entities), keeping the text of the elements an index needs
+     * takes in: Path file
+     * returns: List of Doc
+     */
+    public static List<Doc> readVolume(Path file) throws IOException {
+        int volume = volumeOf(file);
+        VolumeHandler handler = new VolumeHandler(volume);
+        
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            InputSource source = new InputSource(in);
+            source.setSystemId(file.toUri().toString());
+            factory.newSAXParser().parse(source, handler);
+        }
+        catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("could not read " + file + ": " + e.getMessage(), e);
+        }
+        
+        return handler.docs;
+    }
+    
+    // volume number of a TAC_volNN.xml file
+    public static int volumeOf(Path file) {
+        Matcher matcher = VOLUME_FILE.matcher(file.getFileName().toString());
+        
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("not a volume file (TAC_volNN.xml): " + file);
+        }
+        
+        return Integer.parseInt(matcher.group(1));
+    }
+    
+    /* 
+     * the live articles holding every one of tokens in field (all of them, if tokens is empty)
+     * takes in: Field field, List<String> tokens, boolean prefix (tokens are prefixes of the terms to match)
+     * returns: BitSet of article ids (may include dead ones; the caller masks them)
+     */
+    private BitSet match(Field field, List<String> tokens, boolean prefix) {
+        TreeMap<String, Postings> terms = this.postings.get(field);
+        BitSet matches = null;
+        
+        for (String token : tokens) {
+            BitSet tokenMatches = new BitSet();
+            
+            if (prefix) {
+                for (Postings list : terms.subMap(token, true, token + Character.MAX_VALUE, true).values()) {
+                    list.addTo(tokenMatches);
+                }
+            }
+            else if (terms.containsKey(token)) {
+                terms.get(token).addTo(tokenMatches);
+            }
+            
+            if (matches == null) {
+                matches = tokenMatches;
+            }
+            else {
+                matches.and(tokenMatches);
+            }
+        }
+        
+        return matches == null ? new BitSet() : matches;
+    }
+    
+    // give doc the next id & add it to the posting lists of its tokens (called with the write lock held)
+    private int add(Doc doc) {
+        int id = this.docs.size();
+        this.docs.add(doc);
+        this.live.set(id);
+        addTokens(Field.TITLE, doc.title(), id);
+        addTokens(Field.ABSTRACT, doc.abstractText(), id);
+        
+        for (String author : doc.authors()) {
+            addTokens(Field.AUTHOR, author, id);
+        }
+        
+        for (String keyword : doc.keywords()) {
+            addTokens(Field.KEYWORD, keyword, id);
+        }
+        
+        return id;
+    }
+    
+    // add id to the posting list of every token of s in field
+    private void addTokens(Field field, String s, int id) {
+        if (s == null) {
+            return;
+        }
+        
+        TreeMap<String, Postings> terms = this.postings.get(field);
+        Tokenizer.tokenize(s, field.isText(), token -> terms.computeIfAbsent(token, t -> new Postings()).add(id));
+    }
+    
+    // mark the articles of volume dead (called with the write lock held)
+    private void drop(int volume) {
+        int[] ids = this.volumes.remove(volume);
+        
+        if (ids != null) {
+            for (int id : ids) {
+                this.live.clear(id);
+                this.docs.set(id, null);
+            }
+        }
+    }
+    
+    // re-index the live articles from scratch, renumbered from 0, so dead ids leave the posting lists
+    private void compact() {
+        TreeMap<Integer, List<Doc>> volumes = new TreeMap<>();
+        
+        for (Map.Entry<Integer, int[]> volume : this.volumes.entrySet()) {
+            volumes.put(volume.getKey(), Arrays.stream(volume.getValue()).mapToObj(this.docs::get).toList());
+        }
+        
+        this.docs.clear();
+        this.live.clear();
+        this.volumes.clear();
+        this.postings.values().forEach(TreeMap::clear);
+        
+        for (Map.Entry<Integer, List<Doc>> volume : volumes.entrySet()) {
+            this.volumes.put(volume.getKey(), volume.getValue().stream().mapToInt(this::add).toArray());
+        }
+    }
+    
+    // the indexed fields; names aren't English, so they aren't stemmed or stop-worded like the others
+    public enum Field {
+        TITLE, AUTHOR, KEYWORD, ABSTRACT;
+        
+        //
+        public boolean isText() { return this != AUTHOR; }
+    }
+    
+    // ascending article ids, grown as articles are added (each id at most once per list)
+    private static class Postings {
+        private int[] ids = new int[2];
+        private int size = 0;
+        
+        // append id, unless it is already the last one (a token seen twice in one article)
+        void add(int id) {
+            if (this.size > 0 && this.ids[this.size - 1] == id) {
+                return;
+            }
+            
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+            
+            this.ids[this.size++] = id;
+        }
+        
+        //
+        void addTo(BitSet set) {
+            for (int i = 0; i < this.size; i++) {
+                set.set(this.ids[i]);
+            }
+        }
+    }
+    
+    /* 
+     * SAX handler collecting the indexed fields of each <article> of a volume file
+     * the title is the publication's (not the issue's, inside <issue_identification>); authors are "given family"
+     */
+    private static class VolumeHandler extends DefaultHandler {
+        private final int volume;
+        private final ArrayList<Doc> docs = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private final ArrayList<String> authors = new ArrayList<>();
+        private final ArrayList<String> keywords = new ArrayList<>();
+        private String title, abstractText, pdf, given, pages;
+        private boolean inIssue = false;
+        
+        //
+        VolumeHandler(int volume) {
+            this.volume = volume;
+        }
+        
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            this.text.setLength(0);
+            
+            switch (qName) {
+                case "article" -> {
+                    this.authors.clear();
+                    this.keywords.clear();
+                    this.title = this.abstractText = this.pdf = this.given = this.pages = null;
+                }
+                case "href" -> {
+                    if (this.pdf == null) {
+                        this.pdf = attributes.getValue("src");
+                    }
+                }
+                case "issue_identification" -> this.inIssue = true;
+                default -> {}
+            }
+        }
+        
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            this.text.append(ch, start, length);
+        }
+        
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String value = this.text.toString().strip();
+            
+            switch (qName) {
+                case "title" -> {
+                    if (!this.inIssue) {
+                        this.title = value;
+                    }
+                }
+                case "abstract" -> this.abstractText = value;
+                case "keyword" -> this.keywords.add(value);
+                case "givenname" -> this.given = value;
+                case "familyname" -> {
+                    this.authors.add(this.given == null || this.given.isEmpty() ? value : this.given + " " + value);
+                    this.given = null;
+                }
+                case "pages" -> this.pages = value;
+                case "issue_identification" -> this.inIssue = false;
+                case "article" -> {
+                    String pages = this.pages == null ? "" : this.pages;
+                    int dash = pages.indexOf('-');
+                    int startPage = parsePage(dash < 0 ? pages : pages.substring(0, dash));
+                    int endPage = dash < 0 ? startPage : parsePage(pages.substring(dash + 1));
+                    this.docs.add(new Doc(this.volume, startPage, endPage, this.title,
+                                          this.authors.toArray(String[]::new), this.keywords.toArray(String[]::new),
+                                          this.abstractText, this.pdf));
+                }
+                default -> {}
+            }
+            
+            this.text.setLength(0);
+        }
+        
+        // page number, or 0 if it isn't one
+        private static int parsePage(String s) {
+            try {
+                return Integer.parseInt(s.strip());
+            }
+            catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+    
+    /* 
+     * one indexed article: what a hit shows (volume, pages, title, authors, pdf url) & the text it was indexed from
+     * title, abstractText & pdf may be null
+     */
+    public record Doc(int volume, int startPage, int endPage, String title, String[] authors, String[] keywords,
+                      String abstractText, String pdf) {
+        // Doc of a parsed Article
+        static Doc of(Article article) {
+            return new Doc(article.getVolume(), article.getStartPage(), article.getEndPage(), article.getTitle(),
+                           article.getAuthors(), article.getKeywords(), article.getAbstract(), article.getPdfSource());
+        }
+    }
+    
+    // a search's number of matches & the first of them (in volume & page order)
+    public record Result(int total, List<Doc> hits) {}
+    
+    // size of the index
+    public record Stats(int volumes, int articles, int terms) {}
+}
@@ -0,0 +1,235 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+public class ArticleStore {
+    private static final int INITIAL_CAPACITY = 64;
+    
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int stringCount = 0;
+    
+    private String[] titles, abstracts, pdfSources;
+    private int[] volumes, years, startPages, endPages, fileSizes;
+    private int[] authorStarts, keywordStarts;
+    private int[] authorRefs = new int[INITIAL_CAPACITY];
+    private int[] keywordRefs = new int[INITIAL_CAPACITY];
+    private int authorRefCount = 0, keywordRefCount = 0;
+    private int size = 0;
+    private final HashMap<Integer, CompletableFuture<Integer>> pendingSizes = new HashMap<>();
+    
+    /* 
+     * Constructor for ArticleStore class
+     * holds the fields of every parsed article in columns instead of one object per article:
+     *    title, abstract & pdf url: one String each
+     *    volume, year, start & end page, file size: int arrays
+     *    authors & keywords: each distinct name stored once, articles keep int references into that table
+     *    (author i of article a is strings[authorRefs[authorStarts[a] + i]])
+     * nothing of the abstract page itself is kept; Article objects are small views made on demand (get())
+     * add() may be called from several threads at once (the fetch workers); reading starts once adding is done
+     * takes in: int capacity (articles expected; the store grows past it)
+     */
+    public ArticleStore(int capacity) {
+        int n = Math.max(capacity, 1);
+        this.titles = new String[n];
+        this.abstracts = new String[n];
+        this.pdfSources = new String[n];
+        this.volumes = new int[n];
+        this.years = new int[n];
+        this.startPages = new int[n];
+        this.endPages = new int[n];
+        this.fileSizes = new int[n];
+        this.authorStarts = new int[n + 1];
+        this.keywordStarts = new int[n + 1];
+    }
+    
+    // ArticleStore sized for a handful of articles
+    public ArticleStore() {
+        this(INITIAL_CAPACITY);
+    }
+    
+    /* 
+     * copy one article's fields into the store; fields can be dropped afterwards
+     * its file size is UNKNOWN_SIZE until probe() is called for it
+     * takes in: ArticleExtractor.Fields fields
+     * returns: int index of the article
+     */
+    public synchronized int add(ArticleExtractor.Fields fields) {
+        if (this.size == this.titles.length) {
+            grow();
+        }
+        
+        int i = this.size++;
+        this.titles[i] = fields.title();
+        this.abstracts[i] = fields.abstractText();
+        this.pdfSources[i] = fields.pdfSource();
+        this.volumes[i] = fields.volume();
+        this.years[i] = fields.year();
+        this.startPages[i] = fields.startPage();
+        this.endPages[i] = fields.endPage();
+        this.fileSizes[i] = Article.UNKNOWN_SIZE;
+        
+        for (String author : fields.authors()) {
+            this.authorRefs = append(this.authorRefs, this.authorRefCount++, idOf(author));
+        }
+        
+        for (String keyword : fields.keywords()) {
+            this.keywordRefs = append(this.keywordRefs, this.keywordRefCount++, idOf(keyword));
+        }
+        
+        this.authorStarts[i + 1] = this.authorRefCount;
+        this.keywordStarts[i + 1] = this.keywordRefCount;
+        return i;
+    }
+    
+    /* 
+     * copy one article's fields into the store with its file size already known (e.g. probed by another process)
+     * takes in: ArticleExtractor.Fields fields, int fileSize (UNKNOWN_SIZE if there is none)
+     * returns: int index of the article
+     */
+    public synchronized int add(ArticleExtractor.Fields fields, int fileSize) {
+        int i = add(fields);
+        this.fileSizes[i] = fileSize;
+        return i;
+    }
+    
+    /* 
+     * queue the HEAD request for article i's pdf with prober (see FileSizeProber); nothing blocks here
+     * takes in: int i, FileSizeProber prober (null leaves the size UNKNOWN_SIZE)
+     */
+    public synchronized void probe(int i, FileSizeProber prober) {
+        if (prober != null) {
+            this.pendingSizes.putIfAbsent(i, prober.probe(this.pdfSources[i]));
+        }
+    }
+    
+    /* 
+     * move every finished probe's result into the fileSizes column & drop its future
+     * call once the probes are done (FileSizeProber.awaitAll) so the store holds plain ints from then on
+     */
+    public synchronized void resolveFileSizes() {
+        Iterator<Map.Entry<Integer, CompletableFuture<Integer>>> pending = this.pendingSizes.entrySet().iterator();
+        
+        while (pending.hasNext()) {
+            Map.Entry<Integer, CompletableFuture<Integer>> entry = pending.next();
+            
+            if (entry.getValue().isDone()) {
+                this.fileSizes[entry.getKey()] = entry.getValue().join();
+                pending.remove();
+            }
+        }
+    }
+    
+    // number of articles added
+    public synchronized int size() {
+        return this.size;
+    }
+    
+    // view of article i
+    public Article get(int i) {
+        return new Article(this, i);
+    }
+    
+    //
+    public String title(int i) { return this.titles[i]; }
+    public String abstractText(int i) { return this.abstracts[i]; }
+    public String pdfSource(int i) { return this.pdfSources[i]; }
+    
+    public int volume(int i) { return this.volumes[i]; }
+    public int year(int i) { return this.years[i]; }
+    public int startPage(int i) { return this.startPages[i]; }
+    public int endPage(int i) { return this.endPages[i]; }
+    
+    // authors of article i, in page order (a new array each call)
+    public String[] authors(int i) {
+        return resolve(this.authorRefs, this.authorStarts[i], this.authorStarts[i + 1]);
+    }
+    
+    // keywords of article i, in page order (a new array each call)
+    public String[] keywords(int i) {
+        return resolve(this.keywordRefs, this.keywordStarts[i], this.keywordStarts[i + 1]);
+    }
+    
+    /* 
+     * file size of article i's pdf, waiting for its probe if it is still in flight
+     * returns: size in bytes, or UNKNOWN_SIZE (probe failed, no length given or never probed)
+     */
+    public int fileSize(int i) {
+        CompletableFuture<Integer> pending;
+        
+        synchronized (this) {
+            pending = this.pendingSizes.get(i);
+        }
+        
+        return pending == null ? this.fileSizes[i] : pending.join();
+    }
+    
+    // true unless article i's probe is still in flight
+    public synchronized boolean isFileSizeResolved(int i) {
+        CompletableFuture<Integer> pending = this.pendingSizes.get(i);
+        return pending == null || pending.isDone();
+    }
+    
+    // article i's fields as the extractor gave them (a new record each call)
+    public ArticleExtractor.Fields fields(int i) {
+        return new ArticleExtractor.Fields(pdfSource(i), title(i), authors(i), abstractText(i), keywords(i),
+                                           volume(i), year(i), startPage(i), endPage(i));
+    }
+    
+    // number of distinct author & keyword strings held
+    public synchronized int distinctStrings() {
+        return this.stringCount;
+    }
+    
+    // id of s in the string table, adding it if it is new
+    private int idOf(String s) {
+        Integer id = this.stringIds.get(s);
+        
+        if (id != null) {
+            return id;
+        }
+        
+        this.strings = append(this.strings, this.stringCount, s);
+        this.stringIds.put(s, this.stringCount);
+        return this.stringCount++;
+    }
+    
+    // strings referenced by refs[from, to)
+    private String[] resolve(int[] refs, int from, int to) {
+        String[] resolved = new String[to - from];
+        
+        for (int k = from; k < to; k++) {
+            resolved[k - from] = this.strings[refs[k]];
+        }
+        
+        return resolved;
+    }
+    
+    // double every per-article column
+    private void grow() {
+        int n = this.titles.length * 2;
+        this.titles = Arrays.copyOf(this.titles, n);
+        this.abstracts = Arrays.copyOf(this.abstracts, n);
+        this.pdfSources = Arrays.copyOf(this.pdfSources, n);
+        this.volumes = Arrays.copyOf(this.volumes, n);
+        this.years = Arrays.copyOf(this.years, n);
+        this.startPages = Arrays.copyOf(this.startPages, n);
+        this.endPages = Arrays.copyOf(this.endPages, n);
+        this.fileSizes = Arrays.copyOf(this.fileSizes, n);
+        this.authorStarts = Arrays.copyOf(this.authorStarts, n + 1);
+        this.keywordStarts = Arrays.copyOf(this.keywordStarts, n + 1);
+    }
+    
+    // array with value at index, doubled first if it is full
+    private static int[] append(int[] array, int index, int value) {
+        int[] out = index < array.length ? array : Arrays.copyOf(array, array.length * 2);
+        out[index] = value;
+        return out;
+    }
+    
+    // array with value at index, doubled first if it is full
+    private static String[] append(String[] array, int index, String value) {
+        String[] out = index < array.length ? array : Arrays.copyOf(array, array.length * 2);
+        out[index] = value;
+        return out;
+    }
+}
@@ -0,0 +1,398 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.*;
+
+public class AuthorIndex {
+    private static final Pattern NAMED_ENTITY = Pattern.compile("&([A-Za-z])[a-z]*;");
+    private static final Pattern NUMERIC_ENTITY = Pattern.compile("&#(\\d+);");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Set<String> SUFFIXES = Set.of("jr", "sr", "ii", "iii", "iv");
+    private static final Set<String> PARTICLES = Set.of("van", "von", "de", "der", "den", "del", "della", "da", "di",
+                                                        "du", "dos", "das", "le", "la", "ten", "ter", "el", "al",
+                                                        "bin", "ibn", "zu");
+    private static final double FUZZY_FAMILY_DICE = 0.7;
+    
+    private final Name[] names;
+    private final HashMap<String, ArrayList<Integer>> blocks = new HashMap<>();
+    private final HashMap<Long, ArrayList<Integer>> familyGrams = new HashMap<>();
+    
+    /* 
+     * Constructor for AuthorIndex class
+     * indexes every author name for two cheap candidate lookups instead of comparing all pairs:
+     *    blocks: normalized family name + first given initial ("adamek|j" holds "J. Adamek" & "Jiri Adamek")
+     *    familyGrams: first given initial + one trigram of the family name, for family names spelled differently
+     * names are normalized first: HTML entities & accents dropped, lower case, punctuation to spaces,
+     * a trailing Jr./Sr./II... set aside, so "Jiri Ad&aacute;mek" & "Jiri Adamek" land in the same block
+     * takes in: Map<Author, AuthorID> authors (e.g. the author registry)
+     */
+    public AuthorIndex(Map<String, Integer> authors) {
+        this.names = new Name[authors.size()];
+        int i = 0;
+        
+        for (Map.Entry<String, Integer> author : authors.entrySet()) {
+            this.names[i++] = Name.of(author.getKey(), author.getValue());
+        }
+        
+        Arrays.sort(this.names, Comparator.comparingInt(Name::id));
+        
+        for (i = 0; i < this.names.length; i++) {
+            Name name = this.names[i];
+            
+            if (name.family().isEmpty()) {
+                continue;
+            }
+            
+            this.blocks.computeIfAbsent(name.family() + "|" + name.initial(), k -> new ArrayList<>()).add(i);
+            
+            for (long gram : name.familyGrams()) {
+                this.familyGrams.computeIfAbsent(((long) name.initial() << 48) | gram, k -> new ArrayList<>()).add(i);
+            }
+        }
+    }
+    
+    /* 
+     * main method for class
+     * index the author registry & write the review report
+     * args (all optional): registry (default metadata/authors.tsv), manifest (default metadata/manifest.tsv,
+     * only used to list the volumes each author is in), report (default metadata/authors-review.tsv)
+     */
+    public static void main(String[] args) throws IOException {
+        Path registryPath = Path.of(args.length > 0 ? args[0] : "metadata/authors.tsv");
+        Path manifestPath = Path.of(args.length > 1 ? args[1] : "metadata/manifest.tsv");
+        Path reportPath = Path.of(args.length > 2 ? args[2] : "metadata/authors-review.tsv");
+        
+        AuthorRegistry registry = AuthorRegistry.load(registryPath);
+        long start = System.nanoTime();
+        AuthorIndex index = new AuthorIndex(registry.ids());
+        List<Finding> findings = index.review();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        
+        writeReport(reportPath, findings, volumesByAuthor(Manifest.load(manifestPath)));
+        System.out.printf("%d authors, %d blocks: %d possible duplicates, %d suspicious splits in %d ms -> %s%n",
+                          registry.size(), index.blocks.size(),
+                          findings.stream().filter(f -> f.kind().equals("duplicate")).count(),
+                          findings.stream().filter(f -> !f.kind().equals("duplicate")).count(),
+                          millis, reportPath);
+    }
+    
+    /* 
+     * everything worth a human look: possible duplicates first (highest similarity first), then suspicious splits
+     * returns: List<Finding>
+     */
+    public List<Finding> review() {
+        ArrayList<Finding> findings = new ArrayList<>(duplicates());
+        findings.addAll(suspiciousSplits());
+        return findings;
+    }
+    
+    /* 
+     * pairs of names that are probably the same person, found only among candidates that share a block
+     * or (for family names that differ) enough family-name trigrams under the same initial
+     * a pair is kept if the given names agree token by token (equal, or one an initial of the other, missing
+     * middle names allowed); its score is the trigram Dice similarity of the two whole normalized names
+     * returns: List<Finding> of kind "duplicate", highest score first
+     */
+    public List<Finding> duplicates() {
+        ArrayList<Finding> found = new ArrayList<>();
+        
+        for (ArrayList<Integer> block : this.blocks.values()) {
+            for (int a = 0; a < block.size(); a++) {
+                for (int b = a + 1; b < block.size(); b++) {
+                    addIfSamePerson(found, this.names[block.get(a)], this.names[block.get(b)], "same family name");
+                }
+            }
+        }
+        
+        int[] shared = new int[this.names.length];
+        int[] touched = new int[this.names.length];
+        
+        for (int i = 0; i < this.names.length; i++) {
+            Name name = this.names[i];
+            int candidates = 0;
+            
+            for (long gram : name.familyGrams()) {
+                for (int j : this.familyGrams.get(((long) name.initial() << 48) | gram)) {
+                    if (j > i && shared[j]++ == 0) {
+                        touched[candidates++] = j;
+                    }
+                }
+            }
+            
+            for (int c = 0; c < candidates; c++) {
+                int j = touched[c];
+                Name other = this.names[j];
+                double dice = 2.0 * shared[j] / (name.familyGrams().length + other.familyGrams().length);
+                shared[j] = 0;
+                
+                if (dice >= FUZZY_FAMILY_DICE && !other.family().equals(name.family())) {
+                    addIfSamePerson(found, name, other, String.format(Locale.ROOT, "family names %.2f alike", dice));
+                }
+            }
+        }
+        
+        found.sort(Comparator.comparingDouble(Finding::score).reversed().thenComparingInt(Finding::id));
+        return found;
+    }
+    
+    /* 
+     * names whose given/family split is probably wrong when cut at the last space (as XmlDocument does):
+     *    no space at all (nothing to split), a Jr./Sr./II... suffix (it would become the family name),
+     *    a particle such as "van" or "de" before the last word (it belongs to the family name),
+     *    an initial in last place ("Adamek J." is written family name first), or a comma left in the given name
+     * returns: List<Finding> of kind "split", in id order
+     */
+    public List<Finding> suspiciousSplits() {
+        ArrayList<Finding> found = new ArrayList<>();
+        
+        for (Name name : this.names) {
+            String raw = name.raw();
+            int space = raw.lastIndexOf(' ');
+            String note = null;
+            
+            if (space < 0) {
+                note = "single word, no given/family split";
+            }
+            else {
+                String last = raw.substring(space + 1);
+                String given = raw.substring(0, space);
+                String[] givenWords = given.split(" ");
+                String beforeLast = givenWords[givenWords.length - 1];
+                
+                if (SUFFIXES.contains(last.replace(".", "").toLowerCase(Locale.ROOT))) {
+                    note = "ends in suffix \"" + last + "\", which would become the family name";
+                }
+                else if (PARTICLES.contains(beforeLast.toLowerCase(Locale.ROOT)) && givenWords.length > 1) {
+                    note = "particle \"" + beforeLast + "\" probably belongs to the family name";
+                }
+                else if (last.matches("\\p{Lu}\\.?")) {
+                    note = "ends in an initial, may be written family name first";
+                }
+                else if (given.contains(",")) {
+                    note = "comma in the given name";
+                }
+            }
+            
+            if (note != null) {
+                found.add(new Finding("split", 0, name.id(), raw, 0, "", note));
+            }
+        }
+        
+        return found;
+    }
+    
+    // number of names indexed
+    public int size() {
+        return this.names.length;
+    }
+    
+    /* 
+     * write findings as a tab separated report with a header line:
+     * kind, score, id, name, volumes, other id, other name, other volumes, note
+     * takes in: Path path, List<Finding> findings, Map<Author, volumes> volumes
+     */
+    public static void writeReport(Path path, List<Finding> findings, Map<String, String> volumes) throws IOException {
+        StringBuilder sb = new StringBuilder("kind\tscore\tid\tname\tvolumes\tother id\tother name\tother volumes\tnote\n");
+        
+        for (Finding f : findings) {
+            sb.append(f.kind()).append("\t")
+                .append(String.format(Locale.ROOT, "%.2f", f.score())).append("\t")
+                .append(f.id()).append("\t").append(f.name()).append("\t")
+                .append(volumes.getOrDefault(f.name(), "")).append("\t")
+                .append(f.otherId() == 0 ? "" : Integer.toString(f.otherId())).append("\t")
+                .append(f.otherName()).append("\t")
+                .append(volumes.getOrDefault(f.otherName(), "")).append("\t")
+                .append(f.note()).append("\n");
+        }
+        
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Files.writeString(path, sb, StandardCharsets.UTF_8);
+    }
+    
+    // author -> comma separated volume numbers it appears in, from the manifest
+    private static Map<String, String> volumesByAuthor(Manifest manifest) {
+        HashMap<String, StringJoiner> volumes = new HashMap<>();
+        
+        for (Manifest.Entry entry : manifest.entries()) {
+            for (String author : entry.authors()) {
+                volumes.computeIfAbsent(author, k -> new StringJoiner(",")).add(Integer.toString(entry.volume()));
+            }
+        }
+        
+        HashMap<String, String> joined = new HashMap<>();
+        volumes.forEach((author, vols) -> joined.put(author, vols.toString()));
+        return joined;
+    }
+    
+    // add a duplicate finding for a & b if their given names are compatible
+    private static void addIfSamePerson(List<Finding> found, Name a, Name b, String note) {
+        if (!compatibleGiven(a.given(), b.given())) {
+            return;
+        }
+        
+        Name first = a.id() < b.id() ? a : b;
+        Name second = first == a ? b : a;
+        found.add(new Finding("duplicate", dice(first.grams(), second.grams()), first.id(), first.raw(),
+                              second.id(), second.raw(), note));
+    }
+    
+    /* 
+     * true if two lists of given-name words could belong to one person:
+     * the first words agree & every word of the shorter list agrees with a word of the longer one, in order
+     * (two words agree if equal, or if one is a single letter the other starts with)
+     * takes in: String[] a, String[] b (normalized words)
+     * returns: boolean
+     */
+    private static boolean compatibleGiven(String[] a, String[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return a.length == b.length;
+        }
+        
+        String[] shorter = a.length <= b.length ? a : b;
+        String[] longer = shorter == a ? b : a;
+        
+        if (!agree(shorter[0], longer[0])) {
+            return false;
+        }
+        
+        int j = 1;
+        
+        for (int i = 1; i < shorter.length; i++) {
+            while (j < longer.length && !agree(shorter[i], longer[j])) {
+                j++;
+            }
+            
+            if (j++ >= longer.length) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    // two given-name words agree if equal or one is the initial of the other
+    private static boolean agree(String a, String b) {
+        if (a.length() == 1 || b.length() == 1) {
+            return a.charAt(0) == b.charAt(0);
+        }
+        
+        return a.equals(b);
+    }
+    
+    // Dice coefficient 2|A & B| / (|A| + |B|) of two sorted trigram sets
+    private static double dice(long[] a, long[] b) {
+        if (a.length + b.length == 0) {
+            return 0;
+        }
+        
+        int shared = 0;
+        
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            }
+            else if (a[i] < b[j]) {
+                i++;
+            }
+            else {
+                j++;
+            }
+        }
+        
+        return 2.0 * shared / (a.length + b.length);
+    }
+    
+    /* 
+     * lower case letters & single spaces only: HTML entities become their base letter (&eacute; -> e),
+     * accents are dropped & anything else that is not a letter becomes a space
+     * takes in: String name
+     * returns: String
+     */
+    static String normalize(String name) {
+        String s = name;
+        
+        if (s.indexOf('&') >= 0) {
+            s = NUMERIC_ENTITY.matcher(s).replaceAll(m -> Character.toString(Integer.parseInt(m.group(1))));
+            s = NAMED_ENTITY.matcher(s).replaceAll("$1");
+        }
+        
+        if (!s.chars().allMatch(c -> c < 0x80)) {
+            s = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        }
+        
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = true;
+        
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            
+            if (Character.isLetter(c)) {
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            }
+            else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        
+        return sb.toString().strip();
+    }
+    
+    // sorted distinct trigrams of " s " (so the first & last letters count too), each packed into a long
+    private static long[] trigrams(String s) {
+        String padded = " " + s + " ";
+        long[] grams = new long[Math.max(0, padded.length() - 2)];
+        
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        
+        Arrays.sort(grams);
+        int n = 0;
+        
+        for (int i = 0; i < grams.length; i++) {
+            if (n == 0 || grams[i] != grams[n - 1]) {
+                grams[n++] = grams[i];
+            }
+        }
+        
+        return Arrays.copyOf(grams, n);
+    }
+    
+    /* 
+     * one indexed author: raw name & id, normalized given words & family name (suffix set aside),
+     * the first given initial (or ' ' if none), & trigrams of the whole name & of the family name
+     */
+    private record Name(int id, String raw, String[] given, String family, char initial, long[] grams,
+                        long[] familyGrams) {
+        // split the normalized name: last word is the family name, after dropping a trailing suffix
+        static Name of(String raw, int id) {
+            ArrayList<String> words = new ArrayList<>(Arrays.asList(normalize(raw).split(" ")));
+            words.removeIf(String::isEmpty);
+            
+            if (words.size() > 1 && SUFFIXES.contains(words.get(words.size() - 1))) {
+                words.remove(words.size() - 1);
+            }
+            
+            String family = words.isEmpty() ? "" : words.remove(words.size() - 1);
+            String[] given = words.toArray(String[]::new);
+            char initial = given.length == 0 ? ' ' : given[0].charAt(0);
+            String full = String.join(" ", words) + (words.isEmpty() ? "" : " ") + family;
+            return new Name(id, raw, given, family, initial, trigrams(full), trigrams(family));
+        }
+    }
+    
+    /* 
+     * one line of the review report
+     * kind: "duplicate" (name & otherName may be one person; score is their similarity, 0-1)
+     *       or "split" (name's given/family split looks wrong; no other name, score 0)
+     */
+    public record Finding(String kind, double score, int id, String name, int otherId, String otherName,
+                          String note) {}
+}
@@ -0,0 +1,153 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class AuthorRegistry {
+    private static final String HEADER = "# authors 1";
+    
+    private final Path path;
+    private final HashMap<String, Integer> ids;
+    private int nextID;
+    private boolean dirty = false;
+    
+    /* 
+     * Constructor for AuthorRegistry class
+     * every author ever written gets an id once & keeps it: ids are never reused or renumbered,
+     * so adding an article only gives ids to its new authors & every other volume's ids stay as they were
+     * takes in: Path path (where save() writes; null keeps the registry in memory only),
+     *           HashMap<Author, AuthorID> ids, int nextID (one past the largest id handed out)
+     */
+    private AuthorRegistry(Path path, HashMap<String, Integer> ids, int nextID) {
+        this.path = path;
+        this.ids = ids;
+        this.nextID = nextID;
+    }
+    
+    /* 
+     * read the registry left by earlier runs
+     * first line is "# authors 1", then one author per line: id, tab, name (in the order ids were handed out)
+     * a missing file is an empty registry; a file with another header is an IOException
+     * (starting over would renumber everyone, which is what the registry is there to prevent)
+     * takes in: Path path
+     * returns: AuthorRegistry
+     */
+    public static AuthorRegistry load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return new AuthorRegistry(path, new HashMap<>(), 1);
+        }
+        
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            
+            if (!HEADER.equals(header)) {
+                throw new IOException("not an author registry: " + path);
+            }
+            
+            HashMap<String, Integer> ids = new HashMap<>(Math.max(16, (int) (Files.size(path) / 16)));
+            int nextID = 1;
+            String line;
+            
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                
+                if (tab < 0) {
+                    throw new IOException("bad author registry line in " + path + ": " + line);
+                }
+                
+                int id = Integer.parseInt(line, 0, tab, 10);
+                ids.put(line.substring(tab + 1), id);
+                nextID = Math.max(nextID, id + 1);
+            }
+            
+            return new AuthorRegistry(path, ids, nextID);
+        }
+    }
+    
+    // registry that is never written anywhere (benchmarks)
+    public static AuthorRegistry inMemory() {
+        return new AuthorRegistry(null, new HashMap<>(), 1);
+    }
+    
+    /* 
+     * id of author, handing out the next free one if the author is new
+     * takes in: String author
+     * returns: int id
+     */
+    public int idOf(String author) {
+        Integer id = this.ids.get(author);
+        
+        if (id == null) {
+            id = this.nextID++;
+            this.ids.put(author, id);
+            this.dirty = true;
+        }
+        
+        return id;
+    }
+    
+    /* 
+     * make sure every author of the volumes' entries has an id
+     * (volumes in order, authors in the order recorded for the volume; a fresh registry therefore
+     * numbers authors exactly as the old per-run getAuthorIDs did)
+     * takes in: Manifest.Entry array, one per volume
+     * returns: authorID HashMap (Author, Author ID Number) of every registered author; read only
+     */
+    public HashMap<String, Integer> assign(Manifest.Entry[] entries) {
+        for (Manifest.Entry entry : entries) {
+            for (String author : entry.authors()) {
+                idOf(author);
+            }
+        }
+        
+        return this.ids;
+    }
+    
+    // every registered author & its id; read only
+    public Map<String, Integer> ids() {
+        return Collections.unmodifiableMap(this.ids);
+    }
+    
+    // number of registered authors
+    public int size() {
+        return this.ids.size();
+    }
+    
+    /* 
+     * write the registry back to path if ids were handed out since it was loaded
+     * (temp file + rename, so a crash keeps the old registry); has to happen before any XML using the new ids is written
+     */
+    public void save() throws IOException {
+        if (!this.dirty || this.path == null) {
+            return;
+        }
+        
+        String[] byID = new String[this.nextID];
+        
+        for (Map.Entry<String, Integer> entry : this.ids.entrySet()) {
+            byID[entry.getValue()] = entry.getKey();
+        }
+        
+        StringBuilder sb = new StringBuilder(HEADER).append("\n");
+        
+        for (int id = 1; id < byID.length; id++) {
+            if (byID[id] != null) {
+                sb.append(id).append("\t").append(byID[id]).append("\n");
+            }
+        }
+        
+        Path parent = this.path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "authors", ".tmp");
+        
+        try {
+            Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+            Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+        
+        this.dirty = false;
+    }
+}
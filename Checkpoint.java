@@ -0,0 +1,294 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+public class Checkpoint implements Closeable {
+    private static final byte[] MAGIC = "TACCKPT1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER = MAGIC.length + Long.BYTES;
+    private static final int FRAME_HEADER = 2 * Integer.BYTES;
+    private static final long SYNC_INTERVAL_NANOS = 1_000_000_000L;
+    private static final byte PAGE = 'P';
+    private static final byte SIZE = 'S';
+    
+    private final Path dir;
+    private final Path log;
+    private final FileChannel channel;
+    private final HashMap<String, Fetched> pages;
+    private final HashMap<String, Integer> sizes;
+    private long lastSync = System.nanoTime();
+    private boolean unsynced = false;
+    private boolean failed = false;
+    
+    /* 
+     * Constructor for Checkpoint class
+     * a checkpoint is one append-only log (dir/crawl.log) of the work a run has finished so far:
+     *    "TACCKPT1", long time the log was started (epoch millis)
+     *    frames: int payload length, int CRC32 of the payload, payload
+     *       'P' url, page hash, the page's extracted fields (ArticleCodec): an abstract page fetched & parsed
+     *       'S' url, int size: a pdf HEAD that answered
+     * frames are appended as the work finishes & forced to disk at most once a second (& on close), so a run that
+     * dies loses at most the last second of fetches; a frame cut off by the crash fails its length or CRC & is dropped
+     * takes in: Path dir, Path log, FileChannel channel (open for appending, positioned at the end),
+     *           HashMap<url, Fetched> pages & HashMap<url, size> sizes read back from the log
+     */
+    private Checkpoint(Path dir, Path log, FileChannel channel, HashMap<String, Fetched> pages,
+                       HashMap<String, Integer> sizes) {
+        this.dir = dir;
+        this.log = log;
+        this.channel = channel;
+        this.pages = pages;
+        this.sizes = sizes;
+    }
+    
+    /* 
+     * open the checkpoint in dir, reading back what an earlier, unfinished run recorded
+     * a log older than maxAgeMillis (or not a checkpoint log at all) is started over, since its pages may be stale;
+     * anything after the last whole frame (a torn write) is cut off, so new frames follow valid ones
+     * takes in: Path dir, long maxAgeMillis
+     * returns: Checkpoint
+     */
+    public static Checkpoint open(Path dir, long maxAgeMillis) throws IOException {
+        Files.createDirectories(dir);
+        Path log = dir.resolve("crawl.log");
+        FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        HashMap<String, Fetched> pages = new HashMap<>();
+        HashMap<String, Integer> sizes = new HashMap<>();
+        
+        try {
+            long end = channel.size() > Integer.MAX_VALUE ? 0 : read(channel, maxAgeMillis, pages, sizes);
+            
+            if (end == 0) {
+                pages.clear();
+                sizes.clear();
+                ByteBuffer header = ByteBuffer.allocate(HEADER).put(MAGIC).putLong(System.currentTimeMillis()).flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+                channel.force(true);
+                end = HEADER;
+            }
+            
+            channel.truncate(end);
+            channel.position(end);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        
+        if (!pages.isEmpty() || !sizes.isEmpty()) {
+            System.out.printf("resuming from checkpoint: %d pages, %d pdf sizes%n", pages.size(), sizes.size());
+        }
+        
+        return new Checkpoint(dir, log, channel, pages, sizes);
+    }
+    
+    /* 
+     * what an earlier run checkpointed for the abstract page at url
+     * takes in: String url
+     * returns: Fetched (hash & fields), or null if the page still has to be fetched
+     */
+    public synchronized Fetched page(String url) {
+        Fetched fetched = this.pages.get(url);
+        
+        if (fetched != null) {
+            Metrics.count("checkpoint.pages", 1);
+        }
+        
+        return fetched;
+    }
+    
+    /* 
+     * pdf size an earlier run checkpointed for url
+     * takes in: String url
+     * returns: size in bytes (may be UNKNOWN_SIZE if the server gave none), or null if url still has to be probed
+     */
+    public synchronized Integer size(String url) {
+        Integer size = this.sizes.get(url);
+        
+        if (size != null) {
+            Metrics.count("checkpoint.sizes", 1);
+        }
+        
+        return size;
+    }
+    
+    /* 
+     * record one fetched & parsed abstract page
+     * takes in: String url, String hash (of the page body), ArticleExtractor.Fields fields
+     */
+    public void putPage(String url, String hash, ArticleExtractor.Fields fields) {
+        append(PAGE, out -> {
+            ArticleCodec.writeString(out, url);
+            ArticleCodec.writeString(out, hash);
+            ArticleCodec.write(out, fields);
+        });
+    }
+    
+    /* 
+     * record one answered pdf HEAD
+     * takes in: String url, int size
+     */
+    public void putSize(String url, int size) {
+        append(SIZE, out -> {
+            ArticleCodec.writeString(out, url);
+            out.writeInt(size);
+        });
+    }
+    
+    /* 
+     * the run finished: close the log & delete it (& dir, if nothing else is in it), so the next run starts fresh
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(this.log);
+        
+        try {
+            Files.deleteIfExists(this.dir);
+        }
+        catch (DirectoryNotEmptyException e) {
+            // someone else's files: leave the directory
+        }
+    }
+    
+    // force whatever is not on disk yet & close the log; it stays for the next run to resume from
+    @Override
+    public synchronized void close() throws IOException {
+        if (!this.channel.isOpen()) {
+            return;
+        }
+        
+        try {
+            if (this.unsynced && !this.failed) {
+                this.channel.force(false);
+            }
+        }
+        finally {
+            this.channel.close();
+        }
+    }
+    
+    /* 
+     * frame the payload written by body & append it, forcing the log to disk if the last force is over a second old
+     * the payload is built outside the lock; a log that can't be written is reported once & then left alone
+     * (losing the checkpoint only costs the resume, so the run itself carries on)
+     * takes in: byte type, FrameWriter body
+     */
+    private void append(byte type, FrameWriter body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(type);
+            body.write(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER, frame.capacity() - FRAME_HEADER);
+        frame.putInt(0, frame.capacity() - FRAME_HEADER).putInt(Integer.BYTES, (int) crc.getValue());
+        
+        synchronized (this) {
+            if (this.failed || !this.channel.isOpen()) {
+                return;
+            }
+            
+            try {
+                while (frame.hasRemaining()) {
+                    this.channel.write(frame);
+                }
+                
+                this.unsynced = true;
+                long now = System.nanoTime();
+                
+                if (now - this.lastSync >= SYNC_INTERVAL_NANOS) {
+                    this.channel.force(false);
+                    this.lastSync = now;
+                    this.unsynced = false;
+                }
+            }
+            catch (IOException e) {
+                this.failed = true;
+                System.err.printf("could not write checkpoint %s, carrying on without it: %s%n", this.log, e);
+            }
+        }
+    }
+    
+    /* 
+     * read every whole frame of the log into pages & sizes
+     * takes in: FileChannel channel, long maxAgeMillis, HashMap pages, HashMap sizes
+     * returns: offset just past the last valid frame, or 0 if the log has to be started over
+     */
+    private static long read(FileChannel channel, long maxAgeMillis, HashMap<String, Fetched> pages,
+                             HashMap<String, Integer> sizes) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+        
+        while (data.hasRemaining()) {
+            if (channel.read(data, data.position()) < 0) {
+                break;
+            }
+        }
+        
+        data.flip();
+        
+        if (data.remaining() < HEADER || !data.slice(0, MAGIC.length).equals(ByteBuffer.wrap(MAGIC))
+                || System.currentTimeMillis() - data.getLong(MAGIC.length) > maxAgeMillis) {
+            return 0;
+        }
+        
+        int end = HEADER;
+        CRC32 crc = new CRC32();
+        
+        while (end + FRAME_HEADER <= data.limit()) {
+            int length = data.getInt(end);
+            int expected = data.getInt(end + Integer.BYTES);
+            int start = end + FRAME_HEADER;
+            
+            if (length <= 0 || length > data.limit() - start) {
+                break;
+            }
+            
+            crc.reset();
+            crc.update(data.slice(start, length));
+            
+            if ((int) crc.getValue() != expected) {
+                break;
+            }
+            
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data.array(), start, length));
+            byte type = in.readByte();
+            String url = ArticleCodec.readString(in);
+            
+            if (type == PAGE) {
+                pages.put(url, new Fetched(ArticleCodec.readString(in), ArticleCodec.read(in)));
+            }
+            else if (type == SIZE) {
+                sizes.put(url, in.readInt());
+            }
+            else {
+                break;
+            }
+            
+            end = start + length;
+        }
+        
+        return end;
+    }
+    
+    // writes one frame's payload
+    private interface FrameWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+    
+    // one checkpointed abstract page: the hash of its body & the fields extracted from it
+    public record Fetched(String hash, ArticleExtractor.Fields fields) {}
+}
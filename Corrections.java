@@ -0,0 +1,48 @@
+import java.util.HashMap;
+
+record Corrections() {
+    public static final HashMap<String, String> TITLE_CORRECTIONS = new HashMap<>() {{
+        put("Functorial and algebraic properties of Browns P functor",
+            "Functorial and algebraic properties of Brown's P functor");
+        put("Approximable Concepts, Chu spaces, and information systems",
+            "Approximable concepts, Chu spaces, and information systems");
+    }};
+    
+    public static final HashMap<String, PageRange> PAGE_CORRECTIONS = new HashMap<>() {{
+        put("Functorial and algebraic properties of Brown's P functor",
+            new PageRange(10, 53));
+        put("Kan extensions along promonoidal functors", new PageRange(72, 77));
+        put("A forbidden-suborder characterization of binarily-composable diagrams " +
+            "in double categories", new PageRange(146, 155));
+        put("Doctrines whose structure forms a fully faithful adjoint string",
+            new PageRange(24, 44));
+        put("Multilinearity of Sketches", new PageRange(269, 277));
+        put("Distributive laws for pseudomonads", new PageRange(91, 147));
+        put("Normal functors and strong protomodularity", new PageRange(206, 218));
+        put("On the object-wise tensor product of functors to modules",
+            new PageRange(227, 235));
+        put("Algebraically closed and existentially closed substructures " +
+            "in categorical context", new PageRange(270, 298));
+        put("Approximable concepts, Chu spaces, and information systems",
+            new PageRange(80, 102));
+        put("Quotients of unital $A_\\infty$-categories",
+            new PageRange(405, 496));
+        put("The Fa&agrave; di Bruno construction", new PageRange(394, 425));
+        put("On the monad of internal groupoids", new PageRange(150, 165));
+        put("Complicial structures in the nerves of omega-categories",
+            new PageRange(780, 803));
+        put("A Bayesian characterization of relative entropy", new PageRange(422, 456));
+        put("The weakly globular double category of fractions of a category",
+            new PageRange(696, 774));
+        put("An algebraic definition of ($\\infty$,n)-categories", new PageRange(775, 807));
+        put("On reflective subcategories of locally presentable categories",
+            new PageRange(1306, 1318));
+        put("Stacks and sheaves of categories as fibrant objects, II",
+            new PageRange(330, 364));
+        put("A note on injective hulls of posemigroups", new PageRange(254, 257));
+        put("A bicategory of decorated cospans", new PageRange(995, 1027));
+        put("A construction of certain weak colimits and an exactness property " +
+            "of the 2-category of categories", new PageRange(193, 215));
+        put("Crossed products of crossed modules of Hopf monoids", new PageRange(867, 897));
+    }};
+}
@@ -0,0 +1,326 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+public class DeltaExporter implements OutputWriter.Listener {
+    private static final byte[] ARTICLE_OPEN = "<article ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ARTICLE_CLOSE = "</article>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HREF = "<href src=\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATE_MASK = "\"????-??-??\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int QUOTED_DATE = DATE_MASK.length;
+    
+    private final HashMap<Path, Integer> volumes = new HashMap<>();
+    private final int articleCount;
+    private final TreeMap<Integer, ArrayList<String>> blocks = new TreeMap<>();
+    private final TreeMap<Integer, ArrayList<String>> labels = new TreeMap<>();
+    private int added = 0;
+    private int changed = 0;
+    private int removed = 0;
+    private IOException failure;
+    
+    /* 
+     * Constructor for DeltaExporter class
+     * finds the articles of a journal being exported that differ from the volume files it replaces, so only those
+     * need re-importing into OJS, & saves them as one native import document (validated like a volume)
+     * it listens to the export's OutputWriter: each volume file about to be replaced is compared, on the writer's
+     * thread, with the document already rendered for it, so nothing is rendered twice & the comparison overlaps
+     * the rendering of the next volumes; a file the writer leaves alone (same bytes) has no changed articles
+     * takes in: Journal journal (the volumes being exported), IntFunction<Path> outputPath (where each is written)
+     */
+    public DeltaExporter(Journal journal, IntFunction<Path> outputPath) {
+        int articleCount = 0;
+        
+        for (Volume volume : journal.getVolumes()) {
+            this.volumes.put(outputPath.apply(volume.getVolume()).toAbsolutePath(), volume.getVolume());
+            articleCount += volume.getArticles().length;
+        }
+        
+        this.articleCount = articleCount;
+    }
+    
+    /* 
+     * compare the volume file at path with the document replacing it (the writer's finished temp file at rendered),
+     * article by article
+     * both are scanned as bytes for their <article> blocks, matched up by pdf url (<href src>) & hashed (SHA-256) with
+     * their quoted dates ("YYYY-MM-DD": the day of the export, stamped all over each block) masked, so an article only
+     * counts as changed if something besides the day it was exported differs (its ids do count: OJS would see them)
+     * added & changed blocks are kept (a few KB each) for finish(); a problem is kept & reported by finish()
+     * takes in: Path path, Path rendered
+     */
+    @Override
+    public synchronized void replacing(Path path, Path rendered) {
+        Integer volume = this.volumes.get(path.toAbsolutePath());
+        
+        if (volume == null || this.failure != null) {
+            return;
+        }
+        
+        long start = System.nanoTime();
+        
+        try {
+            HashMap<String, byte[]> old = new HashMap<>();
+            
+            for (Block block : readBlocks(path)) {
+                old.put(block.href(), block.hash());
+            }
+            
+            byte[] bytes = Files.readAllBytes(rendered);
+            List<Block> fresh = blocks(bytes, bytes.length, path);
+            
+            for (int i = 0; i < fresh.size(); i++) {
+                Block block = fresh.get(i);
+                byte[] previous = old.remove(block.href());
+                
+                if (previous != null && MessageDigest.isEqual(previous, block.hash())) {
+                    continue;
+                }
+                
+                if (previous == null) {
+                    this.added++;
+                }
+                else {
+                    this.changed++;
+                }
+                
+                String text = new String(bytes, block.start(), block.end() - block.start(),
+                                          StandardCharsets.UTF_8);
+                // re-indented & ended as in a volume, so the delta reads like one
+                this.blocks.computeIfAbsent(volume, v -> new ArrayList<>()).add("  " + text + "\n");
+                this.labels.computeIfAbsent(volume, v -> new ArrayList<>())
+                    .add("volume " + volume + ", article " + (i + 1));
+            }
+            
+            this.removed += old.size();
+            Metrics.observe("delta.compare", System.nanoTime() - start);
+        }
+        catch (IOException e) {
+            this.failure = e;
+        }
+    }
+    
+    /* 
+     * once the export is done: save the added & changed articles, in volume & page order, to deltaPath
+     * (atomically, validated against validator's schema if it is not null); nothing is written if there are none
+     * an invalid delta is still written (to look at) but throws an IOException listing its problems
+     * takes in: Path deltaPath, XmlValidator validator (may be null)
+     * returns: Summary of the comparison
+     */
+    public synchronized Summary finish(Path deltaPath, XmlValidator validator) throws IOException {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+        
+        ArrayList<String> blocks = new ArrayList<>();
+        ArrayList<String> labels = new ArrayList<>();
+        this.blocks.values().forEach(blocks::addAll);
+        this.labels.values().forEach(labels::addAll);
+        
+        if (!blocks.isEmpty()) {
+            write(deltaPath, blocks, labels, validator);
+        }
+        
+        return new Summary(this.added, this.changed, this.articleCount - this.added - this.changed, this.removed);
+    }
+    
+    /* 
+     * save the delta document atomically (through an OutputWriter of its own), validating it on the way
+     * takes in: Path path, List<String> blocks, List<String> labels, XmlValidator validator (may be null)
+     */
+    private static void write(Path path, List<String> blocks, List<String> labels,
+                              XmlValidator validator) throws IOException {
+        OutputWriter.TempFile temp = new OutputWriter.TempFile(path);
+        IOException invalid = null;
+        
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(temp, StandardCharsets.UTF_8));
+            
+            if (validator == null) {
+                XmlDocument.writeArticles(out, blocks, labels);
+            }
+            else {
+                try (XmlValidator.Session session = validator.open(out, path.getFileName().toString())) {
+                    XmlDocument.writeArticles(session, blocks, labels);
+                }
+                catch (IOException e) {
+                    if (temp.failed()) {
+                        throw e;
+                    }
+                    
+                    // the temp file took every byte, so this is the validator's verdict on a whole document
+                    invalid = e;
+                }
+            }
+            
+            out.flush();
+        }
+        catch (IOException | RuntimeException e) {
+            temp.discard();
+            throw e;
+        }
+        
+        CompletableFuture<Boolean> written;
+        
+        try (OutputWriter writer = new OutputWriter(1)) {
+            written = writer.submit(path, temp);
+        }
+        
+        try {
+            written.join();
+        }
+        catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        
+        if (invalid != null) {
+            throw invalid;
+        }
+    }
+    
+    /* 
+     * the <article> blocks of the volume file at path, read whole into an array (a volume is a few hundred KB at
+     * most) & never decoded; scanning an array is much quicker than reading a memory mapping a byte at a time,
+     * & mapping the file only to copy it out was no quicker than reading it
+     * takes in: Path path
+     * returns: List of Block, empty if there is no file
+     */
+    private static List<Block> readBlocks(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return List.of();
+        }
+        
+        byte[] bytes = Files.readAllBytes(path);
+        return blocks(bytes, bytes.length, path);
+    }
+    
+    /* 
+     * every <article> block of the document in bytes, in order
+     * each block is read once: the pass that looks for its </article> also hashes it, swapping each quoted date
+     * for DATE_MASK; only the pdf url becomes a String
+     * takes in: byte[] bytes (the document is bytes[0, limit)), int limit, Path source (for messages)
+     * returns: List of Block
+     */
+    static List<Block> blocks(byte[] bytes, int limit, Path source) throws IOException {
+        ArrayList<Block> blocks = new ArrayList<>();
+        int start = indexOf(bytes, ARTICLE_OPEN, 0, limit);
+        
+        while (start >= 0) {
+            MessageDigest sha256 = sha256();
+            int run = start;
+            int end = -1;
+            int i = start;
+            
+            while (i < limit) {
+                byte b = bytes[i];
+                
+                if (b == '"' && isQuotedDate(bytes, i, limit)) {
+                    sha256.update(bytes, run, i - run);
+                    sha256.update(DATE_MASK);
+                    i += QUOTED_DATE;
+                    run = i;
+                }
+                else if (b == '<' && startsWith(bytes, ARTICLE_CLOSE, i, limit)) {
+                    end = i + ARTICLE_CLOSE.length;
+                    break;
+                }
+                else {
+                    i++;
+                }
+            }
+            
+            if (end < 0) {
+                throw new IOException("unterminated <article> in " + source);
+            }
+            
+            sha256.update(bytes, run, end - run);
+            blocks.add(new Block(hrefOf(bytes, start, end), sha256.digest(), start, end));
+            start = indexOf(bytes, ARTICLE_OPEN, end, limit);
+        }
+        
+        return blocks;
+    }
+    
+    // true if bytes holds a quoted "DDDD-DD-DD" at i (before limit)
+    private static boolean isQuotedDate(byte[] bytes, int i, int limit) {
+        if (i + QUOTED_DATE > limit || bytes[i + 11] != '"' || bytes[i + 5] != '-' || bytes[i + 8] != '-') {
+            return false;
+        }
+        
+        for (int k = 1; k <= 10; k++) {
+            byte b = bytes[i + k];
+            
+            if (k != 5 && k != 8 && (b < '0' || b > '9')) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    // the src of the first <href> in bytes[from, to) (the article's pdf url, as escaped in the XML), or "" if none
+    private static String hrefOf(byte[] bytes, int from, int to) {
+        int start = indexOf(bytes, HREF, from, to);
+        
+        if (start < 0) {
+            return "";
+        }
+        
+        start += HREF.length;
+        int end = start;
+        
+        while (end < to && bytes[end] != '"') {
+            end++;
+        }
+        
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+    
+    // first index of needle in bytes[from, to), or -1
+    private static int indexOf(byte[] bytes, byte[] needle, int from, int to) {
+        for (int i = from; i + needle.length <= to; i++) {
+            if (bytes[i] == needle[0] && startsWith(bytes, needle, i, to)) {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
+    
+    // true if bytes holds needle at i (before limit)
+    private static boolean startsWith(byte[] bytes, byte[] needle, int i, int limit) {
+        if (i + needle.length > limit) {
+            return false;
+        }
+        
+        for (int k = 0; k < needle.length; k++) {
+            if (bytes[i + k] != needle[k]) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    // a fresh SHA-256 digest (every JDK has it)
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    // one <article> block: its pdf url, its date-masked hash & where it is ([start, end) of the document)
+    record Block(String href, byte[] hash, int start, int end) {}
+    
+    /* 
+     * how the exported articles compare with the files they replaced
+     * added: no block for its pdf before; changed: block differs; unchanged: same but for dates;
+     * removed: blocks whose pdf is no longer in their volume (a native import can't remove them; reported only)
+     */
+    public record Summary(int added, int changed, int unchanged, int removed) {}
+}
@@ -0,0 +1,385 @@
+import java.io.*;
+import java.net.http.HttpResponse;
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+public class Fetcher {
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int CHARSET_PRESCAN = 1024;
+    private static final Pattern CHARSET_PARAM = Pattern.compile("charset\\s*=\\s*[\"']?([-\\w.:]+)",
+                                                                 Pattern.CASE_INSENSITIVE);
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]*?charset\\s*=\\s*[\"']?([-\\w.:]+)",
+                                                                Pattern.CASE_INSENSITIVE);
+    
+    private final RequestScheduler scheduler;
+    private final Transport transport;
+    private final HttpCache cache;
+    
+    /* 
+     * Constructor for Fetcher class
+     * every request goes through scheduler, which runs it on its worker pool under a per-host concurrency limit
+     * (& retries it on throttling or transient failures, if the scheduler is set up to)
+     * & is sent over transport, whose pooled client reuses connections across requests
+     * if cache is not null, responses are kept on disk & revalidated with conditional requests
+     * takes in: RequestScheduler scheduler, Transport transport, HttpCache cache
+     */
+    public Fetcher(RequestScheduler scheduler, Transport transport, HttpCache cache) {
+        this.scheduler = scheduler;
+        this.transport = transport;
+        this.cache = cache;
+    }
+    
+    // Fetcher with its own Transport (default timeouts)
+    public Fetcher(RequestScheduler scheduler, HttpCache cache) {
+        this(scheduler, new Transport(), cache);
+    }
+    
+    /* 
+     * GET url & decode the whole response body with its declared charset (see getPage)
+     * takes in: String url
+     * returns: response body as a String
+     */
+    public String get(String url) throws IOException {
+        return getPage(url, page -> {
+            StringWriter body = new StringWriter();
+            page.transferTo(body);
+            return body.toString();
+        }).value();
+    }
+    
+    /* 
+     * GET url & hand its body to reader as text, decoded on the fly:
+     *    decompressed as it arrives (Transport.decoded) & read in charset (see charsetOf)
+     *    without a cache (or recorder) the body is never held whole: reader pulls lines straight off the connection,
+     *    so a page costs a few small buffers however large it is
+     *    with one the body is fetched whole by getEntry() (it has to be stored), then read from memory the same way
+     * whatever reader leaves unread is still drained, so the page hash always covers the whole body
+     * takes in: String url, PageReader reader
+     * returns: Page of what reader returned & the hex SHA-256 of the decompressed body
+     */
+    public <T> Page<T> getPage(String url, PageReader<T> reader) throws IOException {
+        if (buffersBodies()) {
+            HttpCache.Entry response = getEntry(url);
+            return readPage(url, new ByteArrayInputStream(response.body()), response.contentType(), reader);
+        }
+        
+        Metrics.Request request = Metrics.request("GET", url);
+        
+        try {
+            HttpResponse<InputStream> response = this.transport.get(url, Map.of());
+            
+            try (CountingInputStream wire = new CountingInputStream(response.body())) {
+                checkStatus(response, null, url);
+                
+                Page<T> page = readPage(url, Transport.decoded(response, wire), header(response, "Content-Type"), reader);
+                request.done(response.statusCode(), wire.count());
+                return page;
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            request.failed();
+            throw e;
+        }
+    }
+    
+    /* 
+     * send a GET for url over the shared transport & read the whole (decompressed) response
+     * with a cache, a stored copy is revalidated (If-None-Match / If-Modified-Since);
+     * a 304 reuses the stored body so nothing but headers crosses the wire
+     * in offline mode the stored body is returned without a request, and a miss is an IOException
+     * any other status outside 2xx is an IOException (retryable ones a RetryableException)
+     * takes in: String url
+     * returns: HttpCache.Entry with the validators, Content-Type & body
+     */
+    public HttpCache.Entry getEntry(String url) throws IOException {
+        HttpCache.Entry cached = this.cache == null ? null : this.cache.lookup("GET", url);
+        
+        if (this.cache != null && this.cache.isOffline()) {
+            return offlineHit(cached, url);
+        }
+        
+        Metrics.Request request = Metrics.request("GET", url);
+        
+        try {
+            HttpResponse<InputStream> response = this.transport.get(url, validators(cached));
+            byte[] body;
+            long wireBytes;
+            
+            try (CountingInputStream wire = new CountingInputStream(response.body())) {
+                checkStatus(response, cached, url);
+                body = Transport.decoded(response, wire).readAllBytes();
+                wireBytes = wire.count();
+            }
+            
+            request.done(response.statusCode(), wireBytes);
+            
+            if (response.statusCode() == HTTP_NOT_MODIFIED) {
+                return cached;
+            }
+            
+            HttpCache.Entry entry = new HttpCache.Entry(header(response, "ETag"), header(response, "Last-Modified"),
+                                                        header(response, "Content-Type"), body.length, body);
+            
+            if (this.cache != null) {
+                this.cache.store("GET", url, entry);
+            }
+            
+            return entry;
+        }
+        catch (IOException | RuntimeException e) {
+            request.failed();
+            throw e;
+        }
+    }
+    
+    /* 
+     * send a HEAD request to url & read the Content-Length header the server reports
+     * cached the same way as get(), minus the body
+     * takes in: String url
+     * returns: content length in bytes, or -1 if the server does not say
+     */
+    public int head(String url) throws IOException {
+        HttpCache.Entry cached = this.cache == null ? null : this.cache.lookup("HEAD", url);
+        
+        if (this.cache != null && this.cache.isOffline()) {
+            return offlineHit(cached, url).contentLength();
+        }
+        
+        Metrics.Request request = Metrics.request("HEAD", url);
+        
+        try {
+            HttpResponse<Void> response = this.transport.head(url, validators(cached));
+            checkStatus(response, cached, url);
+            request.done(response.statusCode(), 0);
+            
+            if (response.statusCode() == HTTP_NOT_MODIFIED) {
+                return cached.contentLength();
+            }
+            
+            long reported = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            int length = reported > Integer.MAX_VALUE ? -1 : (int) reported;
+            
+            if (this.cache != null) {
+                this.cache.store("HEAD", url, new HttpCache.Entry(header(response, "ETag"),
+                                                                 header(response, "Last-Modified"),
+                                                                 null, length, null));
+            }
+            
+            return length;
+        }
+        catch (IOException | RuntimeException e) {
+            request.failed();
+            throw e;
+        }
+    }
+    
+    // queue get(url) behind the per-host cap; returns a future of the response body
+    public CompletableFuture<String> getAsync(String url) {
+        return submit(url, () -> get(url));
+    }
+    
+    /* 
+     * run request through the scheduler: on the worker pool once url's host has a free slot,
+     * retried if it fails with a transient error & the scheduler allows retries
+     * takes in: String url (used for its host), Callable request
+     * returns: CompletableFuture completed with the request's result or exception
+     */
+    public <T> CompletableFuture<T> submit(String url, Callable<T> request) {
+        return this.scheduler.submit(url, request);
+    }
+    
+    // submit in lane (one per journal sharing this Fetcher; lanes take turns at each host, see RequestScheduler)
+    public <T> CompletableFuture<T> submit(String lane, String url, Callable<T> request) {
+        return this.scheduler.submit(lane, url, request);
+    }
+    
+    /* 
+     * wait for future and unwrap its result
+     * takes in: CompletableFuture future
+     * returns: the future's value; failures are rethrown as RuntimeException
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        }
+    }
+    
+    // stop accepting work; queued requests are abandoned, running ones finish
+    public void shutdown() {
+        this.scheduler.shutdown();
+    }
+    
+    /* 
+     * true if GET bodies have to be held whole (so getPage goes through getEntry): with a cache they are stored
+     * subclasses that keep or replay bodies say so here
+     */
+    protected boolean buffersBodies() {
+        return this.cache != null;
+    }
+    
+    /* 
+     * read one decompressed body through reader & hash it on the way
+     * layers: body -> SHA-256 -> buffer (so the charset prescan can look ahead) -> decoder -> BufferedReader
+     * takes in: String url, InputStream body, String contentType (may be null), PageReader reader
+     * returns: Page
+     */
+    private static <T> Page<T> readPage(String url, InputStream body, String contentType,
+                                        PageReader<T> reader) throws IOException {
+        MessageDigest sha256;
+        
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        
+        try (BufferedInputStream in = new BufferedInputStream(new DigestInputStream(body, sha256), BUFFER_SIZE)) {
+            Charset charset = charsetOf(contentType, in);
+            T value = reader.read(new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE));
+            in.transferTo(OutputStream.nullOutputStream());
+            return new Page<>(url, value, HexFormat.of().formatHex(sha256.digest()));
+        }
+    }
+    
+    /* 
+     * charset a page declares, looked for in order:
+     *    the charset parameter of its Content-Type header
+     *    a <meta charset=...> / <meta http-equiv="Content-Type" content="...; charset=..."> in its first 1024 bytes
+     *    (peeked at through in's buffer, nothing is consumed)
+     * an unknown or missing name falls back to the platform charset, which is what pages were always read with
+     * takes in: String contentType (may be null), BufferedInputStream in
+     * returns: Charset
+     */
+    static Charset charsetOf(String contentType, BufferedInputStream in) throws IOException {
+        Charset declared = contentType == null ? null : charsetNamed(CHARSET_PARAM.matcher(contentType));
+        
+        if (declared != null) {
+            return declared;
+        }
+        
+        in.mark(CHARSET_PRESCAN);
+        byte[] head = in.readNBytes(CHARSET_PRESCAN);
+        in.reset();
+        
+        declared = charsetNamed(META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1)));
+        return declared == null ? Charset.defaultCharset() : declared;
+    }
+    
+    // Charset named by matcher's first group, or null if nothing matched or the JVM doesn't know the name
+    private static Charset charsetNamed(Matcher matcher) {
+        if (!matcher.find()) {
+            return null;
+        }
+        
+        try {
+            return Charset.forName(matcher.group(1));
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    // conditional request headers from a stored entry's validators (none without an entry)
+    private static Map<String, String> validators(HttpCache.Entry cached) {
+        HashMap<String, String> headers = new HashMap<>();
+        
+        if (cached != null && cached.etag() != null) {
+            headers.put("If-None-Match", cached.etag());
+        }
+        
+        if (cached != null && cached.lastModified() != null) {
+            headers.put("If-Modified-Since", cached.lastModified());
+        }
+        
+        return headers;
+    }
+    
+    /* 
+     * reject a response that can't be used:
+     *    429 / 502 / 503 / 504 become a RetryableException (with the server's Retry-After) so the scheduler backs off
+     *    a 304 is only fine if there is a stored copy to fall back on
+     *    anything else outside 2xx is an IOException naming the status
+     * takes in: HttpResponse response, HttpCache.Entry cached, String url
+     */
+    private static void checkStatus(HttpResponse<?> response, HttpCache.Entry cached, String url) throws IOException {
+        int status = response.statusCode();
+        
+        if (RequestScheduler.isRetryableStatus(status)) {
+            throw new RequestScheduler.RetryableException(status,
+                                                          RequestScheduler.parseRetryAfter(header(response, "Retry-After")),
+                                                          url);
+        }
+        
+        if (status == HTTP_NOT_MODIFIED && cached != null) {
+            return;
+        }
+        
+        if (status < 200 || status >= 300) {
+            throw new IOException("HTTP " + status + " from " + url);
+        }
+    }
+    
+    // first value of a response header, or null
+    private static String header(HttpResponse<?> response, String name) {
+        return response.headers().firstValue(name).orElse(null);
+    }
+    
+    // cached response for an offline request, or an IOException naming the url that was never fetched
+    private static HttpCache.Entry offlineHit(HttpCache.Entry cached, String url) throws IOException {
+        if (cached == null) {
+            throw new IOException("offline and not in cache: " + url);
+        }
+        
+        Metrics.count("cache.offlineHits", 1);
+        return cached;
+    }
+    
+    // reads one page's text; may stop before the end (the rest is drained for it)
+    // the fetch can still fail after read returns (while draining) & be retried, so read should not publish its value
+    @FunctionalInterface
+    public interface PageReader<T> {
+        T read(BufferedReader page) throws IOException;
+    }
+    
+    // one fetched page: its url, what the PageReader made of it & the hex SHA-256 of its decompressed body
+    public record Page<T>(String url, T value, String hash) {}
+    
+    // counts the bytes read through it (the body as it came off the wire, before decompression)
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+        
+        // wrap in
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        // bytes read so far
+        private long count() {
+            return this.count;
+        }
+        
+        // one byte, counted
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            this.count += b < 0 ? 0 : 1;
+            return b;
+        }
+        
+        // up to len bytes, counted
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            this.count += Math.max(n, 0);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FileSizeProber {
+    private final Fetcher fetcher;
+    private final Checkpoint checkpoint;
+    private final String lane;
+    private final HashMap<String, CompletableFuture<Integer>> probes = new HashMap<>();
+    
+    /* 
+     * Constructor for FileSizeProber class
+     * HEAD requests are sent through fetcher, so they share its worker pool & per-host cap
+     * with a checkpoint, sizes an interrupted run already got are reused & every answered HEAD is recorded in it
+     * takes in: Fetcher fetcher, Checkpoint checkpoint (may be null), String lane (the journal's, see Fetcher.submit)
+     */
+    public FileSizeProber(Fetcher fetcher, Checkpoint checkpoint, String lane) {
+        this.fetcher = fetcher;
+        this.checkpoint = checkpoint;
+        this.lane = lane;
+    }
+    
+    // FileSizeProber without a checkpoint, in the default lane
+    public FileSizeProber(Fetcher fetcher) {
+        this(fetcher, null, "");
+    }
+    
+    /* 
+     * queue a HEAD request for pdfSource & return right away, so the caller can keep parsing
+     * while the request is in flight; probes pile up in the fetcher's host queue & go out together
+     * the same url is only ever probed once, later calls get the first call's future
+     * a size found in the checkpoint is returned without a request
+     * a HEAD that is refused or has no Content-Length falls back to a GET (see size)
+     * a probe that still fails is reported on stderr and resolves to Article.UNKNOWN_SIZE instead of failing the run
+     * (it is not checkpointed, so a resumed run tries it again)
+     * takes in: String pdfSource
+     * returns: CompletableFuture of the file size in bytes
+     */
+    public synchronized CompletableFuture<Integer> probe(String pdfSource) {
+        return this.probes.computeIfAbsent(pdfSource, url -> {
+            Integer checkpointed = this.checkpoint == null ? null : this.checkpoint.size(url);
+            
+            // an unknown size (-1) checkpointed by an older run is probed again
+            if (checkpointed != null && checkpointed >= 0) {
+                return CompletableFuture.completedFuture(checkpointed);
+            }
+            
+            return this.fetcher.submit(this.lane, url, () -> size(url))
+                .exceptionally(e -> {
+                    System.err.printf("could not probe size of %s: %s%n", url, e);
+                    return Article.UNKNOWN_SIZE;
+                });
+        });
+    }
+    
+    // block until every probe queued so far has finished (succeeded or resolved to UNKNOWN_SIZE)
+    public void awaitAll() {
+        CompletableFuture<?>[] pending;
+        
+        synchronized (this) {
+            pending = this.probes.values().toArray(CompletableFuture[]::new);
+        }
+        
+        CompletableFuture.allOf(pending).join();
+    }
+    
+    /* 
+     * size of the file at url: the Content-Length of a HEAD, or if the HEAD is refused or gives no length,
+     * the length of the (decompressed) body of a GET, so no article is left without a size for want of a header
+     * (the GET goes through the fetcher like any other, so it is cached & recorded); kept in the checkpoint
+     * takes in: String url
+     * returns: int size in bytes
+     */
+    private int size(String url) throws IOException {
+        int size;
+        
+        try {
+            size = this.fetcher.head(url);
+        }
+        catch (InterruptedIOException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            size = Article.UNKNOWN_SIZE;
+        }
+        
+        if (size < 0) {
+            size = this.fetcher.getEntry(url).body().length;
+        }
+        
+        if (this.checkpoint != null) {
+            this.checkpoint.putSize(url, size);
+        }
+        
+        return size;
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+public class HttpCache {
+    private final Path dir;
+    private final boolean offline;
+    
+    /* 
+     * Constructor for HttpCache class
+     * every cached response lives in dir as a pair of files named after a hash of the request:
+     *    <hash>.meta (url, method, ETag, Last-Modified, Content-Type, Content-Length as a properties file)
+     *    <hash>.body (the response body, decompressed; GET only)
+     * in offline mode the network is never used; lookups that miss are errors
+     * takes in: Path dir, boolean offline
+     */
+    public HttpCache(Path dir, boolean offline) {
+        this.dir = dir;
+        this.offline = offline;
+    }
+    
+    // return value of offline field
+    public boolean isOffline() {
+        return this.offline;
+    }
+    
+    /* 
+     * read the cached response for method + url, if there is one
+     * takes in: String method ("GET" or "HEAD"), String url
+     * returns: Entry, or null if nothing (or only part of an entry) is on disk
+     */
+    public Entry lookup(String method, String url) throws IOException {
+        String key = keyOf(method, url);
+        Path meta = this.dir.resolve(key + ".meta");
+        Path body = this.dir.resolve(key + ".body");
+        
+        if (!Files.exists(meta) || (method.equals("GET") && !Files.exists(body))) {
+            return null;
+        }
+        
+        Properties props = new Properties();
+        
+        try (Reader in = Files.newBufferedReader(meta, StandardCharsets.UTF_8)) {
+            props.load(in);
+        }
+        
+        return new Entry(props.getProperty("etag"),
+                         props.getProperty("lastModified"),
+                         props.getProperty("contentType"),
+                         Integer.parseInt(props.getProperty("contentLength", "-1")),
+                         method.equals("GET") ? Files.readAllBytes(body) : null);
+    }
+    
+    /* 
+     * write response to the cache for method + url, replacing any older entry
+     * body goes first & meta last, each through a temp file + atomic rename,
+     * so a crash part way through never leaves a meta file pointing at a half-written body
+     * takes in: String method, String url, Entry response
+     */
+    public void store(String method, String url, Entry response) throws IOException {
+        String key = keyOf(method, url);
+        Files.createDirectories(this.dir);
+        
+        if (response.body() != null) {
+            writeAtomically(this.dir.resolve(key + ".body"), response.body());
+        }
+        
+        Properties props = new Properties();
+        props.setProperty("method", method);
+        props.setProperty("url", url);
+        props.setProperty("contentLength", Integer.toString(response.contentLength()));
+        
+        if (response.etag() != null) {
+            props.setProperty("etag", response.etag());
+        }
+        
+        if (response.lastModified() != null) {
+            props.setProperty("lastModified", response.lastModified());
+        }
+        
+        if (response.contentType() != null) {
+            props.setProperty("contentType", response.contentType());
+        }
+        
+        StringWriter out = new StringWriter();
+        props.store(out, null);
+        writeAtomically(this.dir.resolve(key + ".meta"), out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    // write bytes to a temp file next to path, then rename it over path
+    private void writeAtomically(Path path, byte[] bytes) throws IOException {
+        Path tmp = Files.createTempFile(this.dir, path.getFileName().toString(), ".tmp");
+        
+        try {
+            Files.write(tmp, bytes);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+    
+    /* 
+     * hex SHA-256 of "method url"; keeps file names short & filesystem safe
+     * takes in: String method, String url
+     * returns: String key
+     */
+    private static String keyOf(String method, String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest((method + " " + url).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // one cached response: validators for revalidation, the Content-Type (for the body's charset), the length a HEAD reported & the GET body
+    public record Entry(String etag, String lastModified, String contentType, int contentLength, byte[] body) {}
+}
@@ -0,0 +1,289 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class IndexServer implements AutoCloseable {
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 1000;
+    private static final long SETTLE_MILLIS = 200;
+    
+    private final ArticleIndex index;
+    private final Path dir;
+    private final HttpServer server;
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger reloads = new AtomicInteger();
+    
+    /* 
+     * Constructor for IndexServer class
+     * a local HTTP query service over index, on 127.0.0.1 only (editors query it from the same machine):
+     *    GET /search?q=QUERY[&limit=N]: the matching articles (see ArticleIndex.search), N at most (default 20),
+     *        as JSON: {"query", "total", "micros" (time the search took), "hits": [{"volume", "pages", "title",
+     *        "authors", "pdf"}, ...]}
+     *    GET /stats: {"volumes", "articles", "terms", "searches", "reloads"}
+     * takes in: ArticleIndex index, Path dir (the volume files it was loaded from; see watch()), int port (0: any free)
+     */
+    public IndexServer(ArticleIndex index, Path dir, int port) throws IOException {
+        this.index = index;
+        this.dir = dir;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/search", exchange -> respond(exchange, this::search));
+        this.server.createContext("/stats", exchange -> respond(exchange, params -> stats()));
+        this.server.setExecutor(Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "index-server");
+            t.setDaemon(true);
+            return t;
+        }));
+        this.server.start();
+    }
+    
+    /* 
+     * main method for class
+     * index every volume file in args[0] (default metadata), serve queries on port args[1] (default 8377)
+     * & keep the index up to date with the directory until killed
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "metadata");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8377;
+        
+        long start = System.nanoTime();
+        ArticleIndex index = ArticleIndex.load(dir);
+        ArticleIndex.Stats stats = index.stats();
+        System.out.printf("indexed %d articles of %d volumes (%d terms) in %d ms%n", stats.articles(),
+                          stats.volumes(), stats.terms(), (System.nanoTime() - start) / 1_000_000);
+        
+        try (IndexServer server = new IndexServer(index, dir, port)) {
+            System.out.printf("listening on http://127.0.0.1:%d/search?q=...%n", server.port());
+            server.watch();
+        }
+    }
+    
+    // port the server is listening on
+    public int port() {
+        return this.server.getAddress().getPort();
+    }
+    
+    // stop the server straight away
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+    
+    /* 
+     * keep the index in step with dir until interrupted: a volume file that is written (the export renames each new
+     * file into place) is re-indexed on its own, one that is deleted leaves the index
+     * events are collected until SETTLE_MILLIS pass without one, so a whole export is a single round of reloads,
+     * each volume once; a file that can't be read is reported & its volume keeps what was indexed before
+     * if the watch queue overflows, every volume file in dir is reloaded
+     */
+    public void watch() throws IOException {
+        try (WatchService watcher = this.dir.getFileSystem().newWatchService()) {
+            this.dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                              StandardWatchEventKinds.ENTRY_DELETE);
+            TreeSet<Path> changed = new TreeSet<>();
+            
+            while (true) {
+                WatchKey key = changed.isEmpty() ? watcher.take()
+                                                 : watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                
+                if (key == null) {
+                    reload(changed);
+                    changed.clear();
+                    continue;
+                }
+                
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir)) {
+                            files.forEach(changed::add);
+                        }
+                    }
+                    else {
+                        changed.add(this.dir.resolve((Path) event.context()));
+                    }
+                }
+                
+                if (!key.reset()) {
+                    throw new IOException("no longer watching " + this.dir);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /* 
+     * re-index the volume files among files (others are ignored), or drop their volumes if they are gone
+     * takes in: Collection<Path> files
+     */
+    private void reload(Collection<Path> files) {
+        for (Path file : files) {
+            if (!ArticleIndex.VOLUME_FILE.matcher(file.getFileName().toString()).matches()) {
+                continue;
+            }
+            
+            long start = System.nanoTime();
+            int volume = ArticleIndex.volumeOf(file);
+            
+            try {
+                String what;
+                
+                if (Files.exists(file)) {
+                    what = "re-indexed " + this.index.loadVolume(file) + " articles";
+                }
+                else {
+                    this.index.removeVolume(volume);
+                    what = "removed";
+                }
+                
+                this.reloads.incrementAndGet();
+                System.out.printf("volume %d: %s in %.1f ms%n", volume, what, (System.nanoTime() - start) / 1e6);
+            }
+            catch (IOException | RuntimeException e) {
+                System.err.printf("could not re-index volume %d: %s%n", volume, e);
+            }
+        }
+    }
+    
+    /* 
+     * the /search response for params
+     * takes in: Map<String, String> params (decoded query parameters)
+     * returns: String JSON
+     */
+    private String search(Map<String, String> params) {
+        String query = params.get("q");
+        
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("q (the query) is missing");
+        }
+        
+        int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_LIMIT;
+        
+        if (limit < 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be from 0 to " + MAX_LIMIT);
+        }
+        
+        long start = System.nanoTime();
+        ArticleIndex.Result result = this.index.search(query, limit);
+        long micros = (System.nanoTime() - start) / 1000;
+        this.searches.incrementAndGet();
+        
+        StringBuilder json = new StringBuilder(256 + 256 * result.hits().size());
+        json.append("{\"query\": ").append(json(query)).append(", \"total\": ").append(result.total())
+            .append(", \"micros\": ").append(micros).append(", \"hits\": [");
+        
+        for (int i = 0; i < result.hits().size(); i++) {
+            ArticleIndex.Doc doc = result.hits().get(i);
+            json.append(i == 0 ? "\n  " : ",\n  ")
+                .append("{\"volume\": ").append(doc.volume())
+                .append(", \"pages\": ").append(json(doc.startPage() + "-" + doc.endPage()))
+                .append(", \"title\": ").append(json(doc.title()))
+                .append(", \"authors\": [");
+            
+            for (int a = 0; a < doc.authors().length; a++) {
+                json.append(a == 0 ? "" : ", ").append(json(doc.authors()[a]));
+            }
+            
+            json.append("], \"pdf\": ").append(json(doc.pdf())).append('}');
+        }
+        
+        return json.append(result.hits().isEmpty() ? "]}\n" : "\n]}\n").toString();
+    }
+    
+    // the /stats response
+    private String stats() {
+        ArticleIndex.Stats stats = this.index.stats();
+        return String.format("{\"volumes\": %d, \"articles\": %d, \"terms\": %d, \"searches\": %d, \"reloads\": %d}%n",
+                             stats.volumes(), stats.articles(), stats.terms(), this.searches.get(),
+                             this.reloads.get());
+    }
+    
+    /* 
+     * answer a GET with handler's JSON for its query parameters: 400 if handler rejects them
+     * (IllegalArgumentException), 405 for anything but GET
+     * takes in: HttpExchange exchange, Handler handler
+     */
+    private static void respond(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            int status = 200;
+            String body;
+            
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                status = 405;
+                body = "{\"error\": \"only GET\"}\n";
+            }
+            else {
+                try {
+                    body = handler.handle(params(exchange.getRequestURI().getRawQuery()));
+                }
+                catch (IllegalArgumentException e) {
+                    status = 400;
+                    body = "{\"error\": " + json(e.getMessage()) + "}\n";
+                }
+            }
+            
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+    
+    // query parameters of a raw (still encoded) query string; the first of a repeated name wins
+    private static Map<String, String> params(String rawQuery) {
+        HashMap<String, String> params = new HashMap<>();
+        
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                params.putIfAbsent(name, value);
+            }
+        }
+        
+        return params;
+    }
+    
+    // s as a JSON string literal (null as null)
+    private static String json(String s) {
+        if (s == null) {
+            return "null";
+        }
+        
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        
+        return sb.append('"').toString();
+    }
+    
+    // JSON for a request's query parameters; an IllegalArgumentException is a bad request
+    private interface Handler {
+        String handle(Map<String, String> params);
+    }
+}
@@ -0,0 +1 @@
+record IssueIdent(int volume, int year) {}
@@ -1,18 +1,21 @@
-import java.util.HashMap;
+import java.util.*;
 
 public class Journal {
     private final Volume[] volumes;
     private final HashMap<String, Integer> authorIDs;
+    private final String dateCreated;
     
     /* 
      * Constructor for Journal class
      * assigns passed volumes array to volumes 
      * assigns passed authorIDs HashMap to volumes 
+     * the creation date is fixed once here, so every volume's XML carries the same date however & whenever it is written
      * takes in: Volume[] volumes, HashMap<AuthorName, AuthorID> authorIDs
      */
     public Journal(Volume[] volumes, HashMap<String, Integer> authorIDs) {
         this.volumes = volumes;
         this.authorIDs = authorIDs;
+        this.dateCreated = XmlDocument.initDateCreated();
     }
     
     // return value of volumes field
@@ -23,9 +26,44 @@ public class Journal {
     /* 
      * convert volume objects to XML Documents 
      * takes in: Volume object
-     * returns: XMLDocument object created from passed volume obj & authorIDs field value
+     * returns: XMLDocument object created from passed volume obj, authorIDs & dateCreated field values
      */
     public XmlDocument toXml(Volume volume) {
-        return new XmlDocument(volume, this.authorIDs);
+        return new XmlDocument(volume, this.authorIDs, this.dateCreated);
+    }
+    
+    /* 
+     * the distinct authors of one volume in the order they first appear (articles in page order)
+     * takes in: Article[] articles
+     * returns: String[] authors
+     */
+    static String[] getAuthors(Article[] articles) {
+        LinkedHashSet<String> authors = new LinkedHashSet<>();
+        
+        for (Article article : articles) {
+            authors.addAll(Arrays.asList(article.getAuthors()));
+        }
+        
+        return authors.toArray(String[]::new);
+    }
+    
+    /* 
+     * loop through the volumes that need rebuilding (non-null entries of volumeArticles)
+     * create a Volume object for each from its articles, that volume's title from volTitles, and its first file id
+     * takes in: Article[][] volumeArticles (index i is volume i + 1), HashMap<Vol Num, Vol Titles> volTitles,
+     *           int[] fileIDFirsts, HashMap of authorIDs
+     * returns a new journal object of those volumes & authorIDs
+     */
+    static Journal build(Article[][] volumeArticles, HashMap<Integer, String> volTitles, int[] fileIDFirsts,
+                         HashMap<String, Integer> authorIDs) {
+        ArrayList<Volume> volumes = new ArrayList<>();
+        
+        for (int i = 0; i < volumeArticles.length; i++) {
+            if (volumeArticles[i] != null) {
+                volumes.add(new Volume(volumeArticles[i], volTitles, fileIDFirsts[i]));
+            }
+        }
+        
+        return new Journal(volumes.toArray(Volume[]::new), authorIDs);
     }
 }
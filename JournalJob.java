@@ -0,0 +1,507 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.*;
+import java.util.stream.Collectors;
+
+public class JournalJob {
+    private final String name;
+    private final String home;
+    private final Path outputDir;
+    private final Path checkpointDir;
+    
+    /* 
+     * Constructor for JournalJob class
+     * one journal site (or mirror) to crawl & export; several jobs can run at once over one shared Fetcher
+     * (one scheduler, connection pool & worker pool), each in its own scheduler lane named after the job,
+     * so the hosts' limits are shared & the jobs take turns on a host they have in common
+     * everything the job keeps between runs lives in outputDir: the volume XML, manifest.tsv & authors.tsv
+     * takes in: String name ("" for the single default journal; otherwise prefixes its messages & stage names),
+     *           String home (url of the journal's home page, ending in "/"), Path outputDir,
+     *           Path checkpointDir (null turns checkpointing off)
+     */
+    public JournalJob(String name, String home, Path outputDir, Path checkpointDir) {
+        this.name = name;
+        this.home = home;
+        this.outputDir = outputDir;
+        this.checkpointDir = checkpointDir;
+    }
+    
+    //
+    public String getName() { return this.name; }
+    public String getHome() { return this.home; }
+    public Path getOutputDir() { return this.outputDir; }
+    
+    /* 
+     * run the job, with its checkpoint open for the whole run (see Checkpoint) & closed whichever way the run ends,
+     * so a failed run leaves everything it finished on disk for the next one
+     * a checkpoint older than -Dtac.checkpointHours (default 24) is ignored
+     * takes in: Fetcher fetcher (shared), boolean recording (the crawl is being recorded: rebuild everything),
+     *           XmlValidator validator (shared; may be null)
+     * returns: true if every volume was written
+     */
+    public boolean run(Fetcher fetcher, boolean recording, XmlValidator validator) throws IOException {
+        Checkpoint checkpoint = openCheckpoint(this.checkpointDir);
+        
+        try {
+            return run(fetcher, recording, validator, checkpoint);
+        }
+        finally {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+    }
+    
+    /* 
+     * the pipeline, one phase after the other:
+     *    fetch the home page (fetchHome) & read the volume titles (initVolTitles) & abstract page urls (abstractUrls) from it
+     *    fetch every abstract page into an ArticleStore (fetchAbstracts), skipping those already in the checkpoint
+     *    build & export the journal from them (see build)
+     * the checkpoint is deleted once the manifest is saved, unless a volume failed
+     * takes in: Fetcher fetcher, boolean recording, XmlValidator validator (may be null), Checkpoint checkpoint (may be null)
+     * returns: true if every volume was written
+     */
+    private boolean run(Fetcher fetcher, boolean recording, XmlValidator validator,
+                        Checkpoint checkpoint) throws IOException {
+        LinkedList<String> htmlLines = fetchHome(fetcher);
+        HashMap<Integer, String> volTitles = initVolTitles(htmlLines);
+        ArticleStore articles = new ArticleStore(1024);
+        ArrayList<Fetcher.Page<Integer>> abstractPages = fetchAbstracts(fetcher, abstractUrls(htmlLines),
+                                                                        articles, checkpoint);
+        FileSizeProber prober = new FileSizeProber(fetcher, checkpoint, this.name);
+        boolean succeeded = build(volTitles, articles, abstractPages, prober, recording, validator);
+        
+        if (checkpoint != null && succeeded) {
+            checkpoint.delete();
+        }
+        
+        return succeeded;
+    }
+    
+    /* 
+     * crawl one shard of the journal (-Dtac.shard=i/n) & save it for mergeShards() instead of exporting anything
+     * the home page is fetched whole, then only the shard's slice of the abstract pages (see Shard) is fetched
+     * & every one of their pdfs probed; the result goes to outputDir/shards/shard-i-of-n.bin
+     * several shard processes can run at once, on one machine or several sharing outputDir: each one checkpoints
+     * to its own checkpointDir/shard-i-of-n, & nothing here reads or writes the manifest or the author registry
+     * takes in: Fetcher fetcher, Shard shard
+     * returns: true (a failed fetch throws)
+     */
+    public boolean runShard(Fetcher fetcher, Shard shard) throws IOException {
+        Path checkpointDir = this.checkpointDir == null ? null : this.checkpointDir.resolve(shard.getName());
+        Checkpoint checkpoint = openCheckpoint(checkpointDir);
+        
+        try {
+            LinkedList<String> htmlLines = fetchHome(fetcher);
+            HashMap<Integer, String> volTitles = initVolTitles(htmlLines);
+            ArrayList<String> urls = abstractUrls(htmlLines);
+            List<String> slice = urls.subList(shard.from(urls.size()), shard.to(urls.size()));
+            ArticleStore articles = new ArticleStore(slice.size());
+            ArrayList<Fetcher.Page<Integer>> abstractPages = fetchAbstracts(fetcher, slice, articles, checkpoint);
+            FileSizeProber prober = new FileSizeProber(fetcher, checkpoint, this.name);
+            
+            for (Fetcher.Page<Integer> page : abstractPages) {
+                articles.probe(page.value(), prober);
+            }
+            
+            time("probe.wait", prober::awaitAll);
+            articles.resolveFileSizes();
+            shard.write(this.outputDir.resolve("shards"), this.home, urls.size(), volTitles, abstractPages, articles);
+            System.out.printf("%swrote shard %d/%d: abstract pages %d to %d of %d%n", prefix(), shard.getIndex(),
+                              shard.getCount(), shard.from(urls.size()) + 1, shard.to(urls.size()), urls.size());
+            
+            if (checkpoint != null) {
+                checkpoint.delete();
+            }
+            
+            return true;
+        }
+        finally {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+    }
+    
+    /* 
+     * put the shards in outputDir/shards back together (see Shard.merge) & build & export the journal from them,
+     * exactly as a single run would from the same pages (see build): the file ids & author ids are only handed out
+     * here, over the whole journal, so the XML doesn't depend on how many shards there were; nothing is fetched
+     * the shard files are deleted once every volume is written
+     * takes in: XmlValidator validator (may be null)
+     * returns: true if every volume was written
+     */
+    public boolean mergeShards(XmlValidator validator) throws IOException {
+        Path shardDir = this.outputDir.resolve("shards");
+        Shard.Merged merged = time("merge", () -> Shard.merge(shardDir, this.home));
+        
+        boolean succeeded = build(merged.volTitles(), merged.articles(), merged.pages(), null, false, validator);
+        
+        if (succeeded) {
+            Shard.deleteAll(shardDir);
+        }
+        
+        return succeeded;
+    }
+    
+    /* 
+     * group the pages by volume & load the manifest left by the last run (outputDir/manifest.tsv)
+     * every page's fields were already extracted into articles while it was fetched (see fetchAbstracts), so the
+     * manifest no longer saves any parsing: for each volume, if the hash of its pages & title matches the manifest,
+     * reuse the recorded article count & authors instead of building its Articles (& probing their pdf sizes);
+     * otherwise initalize its Article objects
+     *    (each article queues its pdf HEAD request with prober, so the probes run while the next articles are built)
+     *    sorted in ascending order by startPage
+     * give authors their permanent ids from the author registry (outputDir/authors.tsv; new authors get the next free id
+     *    & the registry is saved before any XML using them) & give each volume its first file id from the article counts
+     * a volume is only rendered & saved if its inputs, its ids or its output file changed/are missing;
+     * those volumes are put in a Journal using Journal.build & each one's toXml() saved to file named according with the volume,
+     *    -Dtac.exportThreads volumes at a time (default: one per core, 1 writes them in order on this thread)
+     *    & checked against the OJS schema with validator while they are written
+     * -Dtac.bundle=true streams every volume into one zip, outputDir/TAC.zip, instead (see VolumeExporter.exportBundle);
+     *    a bundle holds the whole journal, so every volume is rendered each time
+     * -Dtac.delta=true also compares the volumes written with the files they replace & saves the articles that were
+     *    added or changed to outputDir/deltas/TAC_delta_<date>-<time>.xml (see DeltaExporter); volumes skipped
+     *    above have no changed articles, so -Dtac.full=true is only needed to count every article
+     * a volume that fails to save is reported & dropped from the manifest (so the next run retries it), the others are still written
+     * write the updated manifest; -Dtac.full=true ignores the old manifest & rebuilds everything
+     * a recorded crawl also rebuilds everything, so every page & pdf HEAD is requested
+     * takes in: HashMap<Vol Num, Vol Title> volTitles, ArticleStore articles, List<Page<article index>> abstractPages
+     *           (in home page order), FileSizeProber prober (null if the sizes are already in articles),
+     *           boolean recording, XmlValidator validator (may be null)
+     * returns: true if every volume was written
+     */
+    private boolean build(HashMap<Integer, String> volTitles, ArticleStore articles,
+                          List<Fetcher.Page<Integer>> abstractPages, FileSizeProber prober, boolean recording,
+                          XmlValidator validator) throws IOException {
+        Path manifestPath = this.outputDir.resolve("manifest.tsv");
+        Manifest manifest = Boolean.getBoolean("tac.full") || recording ? Manifest.empty(manifestPath)
+                                                                        : Manifest.load(manifestPath);
+        boolean bundle = Boolean.getBoolean("tac.bundle");
+        boolean delta = Boolean.getBoolean("tac.delta");
+        
+        if (bundle && delta) {
+            throw new IllegalStateException("tac.delta compares with the loose volume files, so not with tac.bundle");
+        }
+        
+        HashMap<Integer, ArrayList<Fetcher.Page<Integer>>> pages =
+            time("group", () -> groupPagesByVolume(abstractPages, articles));
+        
+        int k = volTitles.size();
+        Article[][] volumeArticles = new Article[k][];
+        Manifest.Entry[] entries = new Manifest.Entry[k];
+        
+        for (int i = 0; i < k; i++) {
+            ArrayList<Fetcher.Page<Integer>> volumePages = pages.getOrDefault(i + 1, new ArrayList<>());
+            String inputHash = Manifest.hashInputs(volTitles.get(i + 1),
+                                                   volumePages.stream().map(Fetcher.Page::hash).toList());
+            Manifest.Entry previous = manifest.get(i + 1);
+            
+            if (previous != null && previous.inputHash().equals(inputHash)) {
+                entries[i] = previous;
+            }
+            else {
+                volumeArticles[i] = parseVolume(volumePages, articles, prober);
+                entries[i] = new Manifest.Entry(i + 1, inputHash, null, volumeArticles[i].length,
+                                                Journal.getAuthors(volumeArticles[i]));
+            }
+        }
+        
+        AuthorRegistry registry = AuthorRegistry.load(this.outputDir.resolve("authors.tsv"));
+        HashMap<String, Integer> authorIDs = registry.assign(entries);
+        registry.save();
+        int[] fileIDFirsts = new int[k];
+        int fileIDFirst = 1;
+        
+        for (int i = 0; i < k; i++) {
+            fileIDFirsts[i] = fileIDFirst;
+            fileIDFirst += entries[i].articleCount();
+            
+            String idHash = Manifest.hashIds(fileIDFirsts[i], entries[i].authors(), authorIDs);
+            boolean unchanged = !bundle
+                && entries[i] == manifest.get(i + 1)
+                && idHash.equals(entries[i].idHash())
+                && Files.exists(outputPath(i + 1));
+            
+            if (unchanged) {
+                volumeArticles[i] = null;
+            }
+            else if (volumeArticles[i] == null) {
+                volumeArticles[i] = parseVolume(pages.getOrDefault(i + 1, new ArrayList<>()), articles, prober);
+            }
+            
+            manifest.put(entries[i].withIdHash(idHash));
+        }
+        
+        if (prober != null) {
+            time("probe.wait", prober::awaitAll);
+            articles.resolveFileSizes();
+        }
+        
+        Journal theoryAndAppsOfCats = time("build", () -> Journal.build(volumeArticles, volTitles, fileIDFirsts,
+                                                                         authorIDs));
+        
+        VolumeExporter exporter = new VolumeExporter(Integer.getInteger("tac.exportThreads",
+                                                                        Runtime.getRuntime().availableProcessors()),
+                                                     validator);
+        DeltaExporter deltaExporter = delta ? new DeltaExporter(theoryAndAppsOfCats, this::outputPath) : null;
+        List<VolumeExporter.Failure> failures = time("export", () -> bundle
+            ? exporter.exportBundle(theoryAndAppsOfCats, this.outputDir.resolve("TAC.zip"),
+                                    vol -> outputPath(vol).getFileName().toString())
+            : exporter.export(theoryAndAppsOfCats, this::outputPath, deltaExporter));
+        
+        if (deltaExporter != null) {
+            finishDelta(deltaExporter, validator);
+        }
+        
+        for (VolumeExporter.Failure failure : failures) {
+            System.err.printf("%scould not write volume %d: %s%n", prefix(), failure.volume(), failure.error());
+            manifest.remove(failure.volume());
+        }
+        
+        System.out.printf("%srebuilt %d of %d volumes%n", prefix(), theoryAndAppsOfCats.getVolumes().length - failures.size(),
+                          k);
+        manifest.save();
+        return failures.isEmpty();
+    }
+    
+    /* 
+     * once the export has compared every volume: save the added & changed articles as a delta import document
+     * (DeltaExporter.finish) & report the counts; a delta that can't be written or doesn't validate is only reported
+     * takes in: DeltaExporter deltaExporter (listened to the export), XmlValidator validator (may be null)
+     */
+    private void finishDelta(DeltaExporter deltaExporter, XmlValidator validator) {
+        Path deltaPath = this.outputDir.resolve("deltas").resolve(
+            "TAC_delta_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".xml");
+        
+        try {
+            DeltaExporter.Summary summary = time("delta", () -> deltaExporter.finish(deltaPath, validator));
+            System.out.printf("%sdelta: %d added, %d changed, %d unchanged, %d no longer listed%s%n", prefix(),
+                              summary.added(), summary.changed(), summary.unchanged(), summary.removed(),
+                              summary.added() + summary.changed() == 0 ? "" : " -> " + deltaPath);
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.printf("%scould not write delta %s: %s%n", prefix(), deltaPath, e);
+        }
+    }
+    
+    // checkpoint in dir, ignoring one older than -Dtac.checkpointHours (default 24); null if dir is null
+    private static Checkpoint openCheckpoint(Path dir) throws IOException {
+        return dir == null ? null
+                           : Checkpoint.open(dir, Duration.ofHours(Long.getLong("tac.checkpointHours", 24)).toMillis());
+    }
+    
+    // outputDir/TAC_volNN.xml for volume number vol
+    private Path outputPath(int vol) {
+        return this.outputDir.resolve(String.format("TAC_vol%02d.xml", vol));
+    }
+    
+    // "name: " to start the job's messages with ("" for the unnamed job)
+    private String prefix() {
+        return this.name.isEmpty() ? "" : this.name + ": ";
+    }
+    
+    // run body as the Metrics stage "name/stage" (just stage for the unnamed job, see Metrics.time), so concurrent
+    // jobs are timed apart; hands back what body returns
+    private <T, E extends Exception> T time(String stage, Metrics.Timed<T, E> body) throws E {
+        return Metrics.time(this.name.isEmpty() ? stage : this.name + "/" + stage, body);
+    }
+    
+    // run body as a stage of this job (see time(String, Timed)), for a body that returns nothing
+    private <E extends Exception> void time(String stage, Metrics.Step<E> body) throws E {
+        Metrics.time(this.name.isEmpty() ? stage : this.name + "/" + stage, body);
+    }
+    
+    /* 
+     * sort abstractPages into volumes by the volume number of each page's article in articles
+     * pages keep the order they had in abstractPages within each volume
+     * takes in: List<Page<article index>> abstractPages, ArticleStore articles
+     * returns: HashMap<Vol Num, pages in that volume>
+     */
+    private static HashMap<Integer, ArrayList<Fetcher.Page<Integer>>> groupPagesByVolume(
+            List<Fetcher.Page<Integer>> abstractPages, ArticleStore articles) {
+        HashMap<Integer, ArrayList<Fetcher.Page<Integer>>> pages = new HashMap<>();
+        
+        for (Fetcher.Page<Integer> page : abstractPages) {
+            pages.computeIfAbsent(articles.volume(page.value()), v -> new ArrayList<>()).add(page);
+        }
+        
+        return pages;
+    }
+    
+    /* 
+     * get the Article of each page of one volume from articles & queue its pdf size probe, then sort them by startPage
+     * (the pages were parsed as they were fetched; this only builds the volume's Articles over the store)
+     * takes in: List<Page<article index>> volumePages, ArticleStore articles, FileSizeProber prober
+     * returns: Article[] of the volume in page order
+     */
+    private Article[] parseVolume(List<Fetcher.Page<Integer>> volumePages, ArticleStore articles,
+                                  FileSizeProber prober) {
+        return time("parse", () -> {
+            Article[] volumeArticles = new Article[volumePages.size()];
+            int i = 0;
+            
+            for (Fetcher.Page<Integer> page : volumePages) {
+                articles.probe(page.value(), prober);
+                volumeArticles[i++] = articles.get(page.value());
+            }
+            
+            Arrays.sort(volumeArticles, Comparator.comparing(Article::getStartPage));
+            return volumeArticles;
+        });
+    }
+    
+    /* 
+     * test for input/output errors while fetching the journal's home page through fetcher
+     * read it line by line as it is decoded, then as they are added remove any whitespaces
+     * and these new strings to the collection
+     * (always fetched again on a resumed run: it is one request & says which abstract pages are current)
+     * takes in: Fetcher fetcher
+     * return htmlLines
+     */
+    private LinkedList<String> fetchHome(Fetcher fetcher) {
+        try {
+            return time("fetch.home", () -> fetcher.getPage(this.home, page -> page.lines()
+                                                            .map(String::strip)
+                                                            .collect(Collectors.toCollection(LinkedList::new)))
+                                                   .value());
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /* 
+     * establishes the standard notation
+     * instantitate regex patterns for volume, article num & title
+     * extracts vol nums & titles from HTML lines and stores them in HashMap:
+     * find all occurrences of  volume pattern in current HTML line using volMatcher
+     * for each occurrence, extract volume number using numMatcher and convert to an integer
+     * then extract corresponding title using titleMatcher
+     * the volume number & title are added to the volTitles HashMap.
+     * takes in: LinkedList<String> htmlLines
+     * returns: HashMap of volTitles
+     */
+
+    private static HashMap<Integer, String> initVolTitles(LinkedList<String> htmlLines) {
+        HashMap<Integer, String> volTitles = new HashMap<>();
+        
+        Pattern volPattern = Pattern.compile("Vol[.] \\d+");
+        Pattern numPattern = Pattern.compile("\\d+");
+        Pattern titlePattern = Pattern.compile("[-]\\s[^<]+</a>");
+        
+        Iterator<String> htmlIter = htmlLines.iterator();
+        String line = htmlIter.next();
+        
+        while (!volPattern.matcher(line).find()) {
+            line = htmlIter.next();
+        }
+        
+        Matcher volMatcher = volPattern.matcher(line);
+        
+        while (volMatcher.find()) {
+            Matcher numMatcher = numPattern.matcher(volMatcher.group());
+            numMatcher.find();
+            int volNum = Integer.parseInt(numMatcher.group());
+            
+            Matcher titleMatcher = titlePattern.matcher(line);
+            titleMatcher.find();
+            String volTitle = titleMatcher.group()
+                .substring(2, titleMatcher.group().length() - 4);
+            
+            volTitles.put(volNum, volTitle);
+            line = htmlIter.next();
+            volMatcher = volPattern.matcher(line);
+        }
+        
+        return volTitles;
+    }
+    
+    /* 
+     * iterate through lines of htmlLines; if lines contain substring then split + add to pages LinkedHashSet
+     * (keeps the order pages appear on the home page, so every run requests & returns them in the same order)
+     * takes in: LinkedList<String> htmlLines
+     * returns: ArrayList of home + page urls (one per ahref link)
+     */
+
+    private ArrayList<String> abstractUrls(LinkedList<String> htmlLines) {
+        LinkedHashSet<String> pages = new LinkedHashSet<>();
+        
+        for (String line : htmlLines) {
+            if (line.contains("abs.html")) {
+                pages.add(line.split("\"")[1]);
+            }
+        }
+        
+        ArrayList<String> urls = new ArrayList<>(pages.size());
+        
+        for (String page : pages) {
+            urls.add(this.home + page);
+        }
+        
+        return urls;
+    }
+    
+    /* 
+     * hand every url to fetcher at once, in this journal's lane; pages are downloaded concurrently,
+     * at most tac.perHost at a time per host over a pool of tac.threads workers
+     * a page already in the checkpoint is not fetched: its stored fields go into articles & its stored hash is kept
+     * each other page is fed to ArticleExtractor line by line as it arrives (see fetchAbstract) & its fields go
+     * into articles, so only the compact columns & the page's hash are kept, not the page
+     * every fetch is waited for (failed ones included) so each page that could be fetched is checkpointed,
+     * then the results are taken in url order, so abstractPages comes back in the same order as a sequential run
+     * throw an err (RuntimeException) if any page fails to download
+     * takes in: Fetcher fetcher, List<String> urls, ArticleStore articles, Checkpoint checkpoint (may be null)
+     * returns: abstractPages ArrayList of Pages holding each page's index in articles, index-aligned with urls
+     */
+    private ArrayList<Fetcher.Page<Integer>> fetchAbstracts(Fetcher fetcher, List<String> urls, ArticleStore articles,
+                                                            Checkpoint checkpoint) {
+        return time("fetch.abstracts", () -> {
+            ArrayList<CompletableFuture<Fetcher.Page<Integer>>> futures = new ArrayList<>(urls.size());
+            
+            for (String url : urls) {
+                Checkpoint.Fetched fetched = checkpoint == null ? null : checkpoint.page(url);
+                
+                if (fetched != null) {
+                    futures.add(CompletableFuture.completedFuture(
+                        new Fetcher.Page<>(url, articles.add(fetched.fields()), fetched.hash())));
+                }
+                else {
+                    futures.add(fetcher.submit(this.name, url, () -> fetchAbstract(fetcher, url, articles, checkpoint)));
+                }
+            }
+            
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+            ArrayList<Fetcher.Page<Integer>> abstractPages = new ArrayList<>(urls.size());
+            
+            for (CompletableFuture<Fetcher.Page<Integer>> future : futures) {
+                abstractPages.add(Fetcher.await(future));
+            }
+            
+            return abstractPages;
+        });
+    }
+    
+    /* 
+     * fetch & extract one abstract page into articles (runs on a fetch worker)
+     * the fields only go into articles once getPage has returned, i.e. the whole body has been read: a page that
+     * fails part way (& is retried) leaves nothing behind
+     * with a checkpoint its fields are logged before they go into articles, so the page is never fetched again
+     * takes in: Fetcher fetcher, String url, ArticleStore articles, Checkpoint checkpoint (may be null)
+     * returns: Page holding the article's index in articles & the page hash
+     */
+    private static Fetcher.Page<Integer> fetchAbstract(Fetcher fetcher, String url, ArticleStore articles,
+                                                       Checkpoint checkpoint) throws IOException {
+        Fetcher.Page<ArticleExtractor.Fields> page = fetcher.getPage(url, ArticleExtractor::extract);
+        
+        if (checkpoint != null) {
+            checkpoint.putPage(url, page.hash(), page.value());
+        }
+        
+        return new Fetcher.Page<>(url, articles.add(page.value()), page.hash());
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+public class Manifest {
+    private final Path path;
+    private final TreeMap<Integer, Entry> entries;
+    
+    /* 
+     * Constructor for Manifest class
+     * takes in: Path path (where save() writes), TreeMap<Vol Num, Entry> entries
+     */
+    private Manifest(Path path, TreeMap<Integer, Entry> entries) {
+        this.path = path;
+        this.entries = entries;
+    }
+    
+    /* 
+     * read the manifest left by the previous run
+     * first line is "# version N"; a missing file, or one written for another XmlDocument.OUTPUT_VERSION,
+     * gives an empty manifest so every volume is rebuilt
+     * every other line is one volume: vol, inputHash, idHash, article count, then its authors, all tab separated
+     * takes in: Path path
+     * returns: Manifest
+     */
+    public static Manifest load(Path path) throws IOException {
+        TreeMap<Integer, Entry> entries = new TreeMap<>();
+        
+        if (!Files.exists(path)) {
+            return new Manifest(path, entries);
+        }
+        
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        
+        if (lines.isEmpty() || !lines.get(0).equals(header())) {
+            return new Manifest(path, entries);
+        }
+        
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            Entry entry = new Entry(Integer.parseInt(fields[0]), fields[1], fields[2],
+                                    Integer.parseInt(fields[3]),
+                                    Arrays.copyOfRange(fields, 4, fields.length));
+            entries.put(entry.volume(), entry);
+        }
+        
+        return new Manifest(path, entries);
+    }
+    
+    // manifest with no entries that will be written to path; used to force a full rebuild
+    public static Manifest empty(Path path) {
+        return new Manifest(path, new TreeMap<>());
+    }
+    
+    // entry recorded for volume, or null if there is none
+    public Entry get(int volume) {
+        return this.entries.get(volume);
+    }
+    
+    // every entry, in volume order
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+    
+    // record entry for its volume, replacing what was there
+    public void put(Entry entry) {
+        this.entries.put(entry.volume(), entry);
+    }
+    
+    // forget volume, so the next run rebuilds it
+    public void remove(int volume) {
+        this.entries.remove(volume);
+    }
+    
+    /* 
+     * write every entry back to path (temp file + rename, so a crash keeps the old manifest)
+     */
+    public void save() throws IOException {
+        StringBuilder sb = new StringBuilder(header()).append("\n");
+        
+        for (Entry entry : this.entries.values()) {
+            sb.append(entry.volume()).append("\t")
+                .append(entry.inputHash()).append("\t")
+                .append(entry.idHash()).append("\t")
+                .append(entry.articleCount());
+            
+            for (String author : entry.authors()) {
+                sb.append("\t").append(author);
+            }
+            
+            sb.append("\n");
+        }
+        
+        Path parent = this.path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "manifest", ".tmp");
+        Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+        Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /* 
+     * hash of everything a volume's articles are built from: its title & its abstract pages
+     * (which are parsed as they are fetched, before this is checked)
+     * pages come as the hashes taken while they were fetched (Fetcher.Page.hash),
+     * sorted here so the order pages were listed in doesn't matter
+     * takes in: String volTitle, List<String> pageHashes
+     * returns: hex SHA-256 String
+     */
+    public static String hashInputs(String volTitle, List<String> pageHashes) {
+        ArrayList<String> sorted = new ArrayList<>(pageHashes);
+        Collections.sort(sorted);
+        return sha256(volTitle + "\n" + String.join("\n", sorted));
+    }
+    
+    /* 
+     * hash of the ids a volume's XML depends on: its first file id & the id of each of its authors
+     * takes in: int fileIDFirst, String[] authors, HashMap<Author, AuthorID> authorIDs
+     * returns: hex SHA-256 String
+     */
+    public static String hashIds(int fileIDFirst, String[] authors, HashMap<String, Integer> authorIDs) {
+        StringBuilder sb = new StringBuilder().append(fileIDFirst);
+        
+        for (String author : authors) {
+            sb.append("\n").append(author).append("\t").append(authorIDs.get(author));
+        }
+        
+        return sha256(sb.toString());
+    }
+    
+    // hex SHA-256 of s encoded as UTF-8
+    private static String sha256(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(s.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // first line of the file; ties the manifest to the XML layout it was written for
+    private static String header() {
+        return "# version " + XmlDocument.OUTPUT_VERSION;
+    }
+    
+    /* 
+     * what was known about one volume after the last run
+     * inputHash: hashInputs() of its pages; idHash: hashIds() it was written with (null until ids are assigned)
+     * articleCount: number of articles (file ids it uses); authors: its distinct authors in article order
+     */
+    public record Entry(int volume, String inputHash, String idHash, int articleCount, String[] authors) {
+        // copy of this entry with idHash filled in
+        public Entry withIdHash(String idHash) {
+            return new Entry(this.volume, this.inputHash, idHash, this.articleCount, this.authors);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+import java.util.function.Function;
+import jdk.jfr.*;
+
+public class Metrics {
+    private static final long START = System.nanoTime();
+    private static final Map<String, LongAdder> STAGES = Collections.synchronizedMap(new LinkedHashMap<>());
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    
+    // static helpers only
+    private Metrics() {}
+    
+    /* 
+     * start timing a stage of the run (e.g. "fetch.abstracts", "parse", "export")
+     * use time() where the stage is a block of code, or close the Stage in a finally block;
+     * the wall time between stage() & close() is added to the stage's total
+     * (a stage entered several times, e.g. once per volume, accumulates) & a tac.Stage JFR event is emitted
+     * takes in: String name
+     * returns: Stage to close when the stage ends
+     */
+    public static Stage stage(String name) {
+        return new Stage(name);
+    }
+    
+    /* 
+     * run body as the named stage (see stage()) & hand back what it returns; the stage ends however body does
+     * takes in: String name, Timed<T, E> body
+     * returns: T what body returned
+     */
+    public static <T, E extends Exception> T time(String name, Timed<T, E> body) throws E {
+        Stage stage = stage(name);
+        
+        try {
+            return body.call();
+        }
+        finally {
+            stage.close();
+        }
+    }
+    
+    // run body as the named stage (see stage()), for a body that returns nothing
+    public static <E extends Exception> void time(String name, Step<E> body) throws E {
+        time(name, () -> {
+            body.run();
+            return null;
+        });
+    }
+    
+    /* 
+     * start timing one HTTP request; finish it with done() or failed()
+     * takes in: String method, String url
+     * returns: Request
+     */
+    public static Request request(String method, String url) {
+        return new Request(method, url);
+    }
+    
+    // add n to the named counter
+    public static void count(String name, long n) {
+        COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(n);
+    }
+    
+    // add one sample (in ns) to the named latency histogram
+    public static void observe(String name, long nanos) {
+        HISTOGRAMS.computeIfAbsent(name, k -> new Histogram()).record(nanos);
+    }
+    
+    // current value of the named counter (0 if it was never touched)
+    public static long counter(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+    
+    // bytes allocated so far by this thread (HotSpot's com.sun.management extension), or 0 if unsupported
+    public static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+            return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        
+        return 0;
+    }
+    
+    /* 
+     * everything recorded so far as a JSON object:
+     *    wallMillis (since class load), stages {name: millis} in the order first entered,
+     *    counters {name: value} & histograms {name: {count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis}},
+     *    both sorted by name
+     * returns: String JSON
+     */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"wallMillis\": ").append(millis(System.nanoTime() - START)).append(",\n");
+        sb.append("  \"stages\": {");
+        
+        synchronized (STAGES) {
+            appendEntries(sb, STAGES.entrySet(), e -> millis(e.sum()));
+        }
+        
+        sb.append("},\n  \"counters\": {");
+        appendEntries(sb, new TreeMap<>(COUNTERS).entrySet(), e -> Long.toString(e.sum()));
+        sb.append("},\n  \"histograms\": {");
+        appendEntries(sb, new TreeMap<>(HISTOGRAMS).entrySet(), Histogram::toJson);
+        return sb.append("}\n}\n").toString();
+    }
+    
+    /* 
+     * write summary() to path (parent directories are created)
+     * takes in: Path path
+     */
+    public static void writeSummary(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Files.writeString(path, summary(), StandardCharsets.UTF_8);
+    }
+    
+    // append "name": value pairs, one per line, for the entries of a JSON object
+    private static <V> void appendEntries(StringBuilder sb, Collection<Map.Entry<String, V>> entries,
+                                          Function<V, String> value) {
+        String separator = "\n";
+        
+        for (Map.Entry<String, V> entry : entries) {
+            sb.append(separator).append("    \"").append(jsonEscape(entry.getKey())).append("\": ")
+                .append(value.apply(entry.getValue()));
+            separator = ",\n";
+        }
+        
+        if (!entries.isEmpty()) {
+            sb.append("\n  ");
+        }
+    }
+    
+    // ns as a millisecond number with 3 decimals
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+    
+    // backslash & quote escaped so name can sit inside a JSON string
+    private static String jsonEscape(String name) {
+        return name.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+    
+    // one timed stage; see stage()
+    public static class Stage implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final StageEvent event = new StageEvent();
+        private boolean closed = false;
+        
+        /* 
+         * Constructor for Stage class
+         * registers the stage (so stages are listed in the order they first start) & begins its JFR event
+         * takes in: String name
+         */
+        private Stage(String name) {
+            this.name = name;
+            STAGES.computeIfAbsent(name, k -> new LongAdder());
+            this.event.begin();
+        }
+        
+        // end the stage; closing twice only counts once
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            
+            this.closed = true;
+            STAGES.get(this.name).add(System.nanoTime() - this.start);
+            this.event.end();
+            
+            if (this.event.shouldCommit()) {
+                this.event.stage = this.name;
+                this.event.commit();
+            }
+        }
+    }
+    
+    // a stage's work, returning a value; see time()
+    public interface Timed<T, E extends Exception> {
+        T call() throws E;
+    }
+    
+    // a stage's work, returning nothing; see time()
+    public interface Step<E extends Exception> {
+        void run() throws E;
+    }
+    
+    // one timed request; see request()
+    public static class Request {
+        private final String method;
+        private final String url;
+        private final long start = System.nanoTime();
+        private final RequestEvent event = new RequestEvent();
+        private boolean finished = false;
+        
+        /* 
+         * Constructor for Request class
+         * takes in: String method, String url
+         */
+        private Request(String method, String url) {
+            this.method = method;
+            this.url = url;
+            this.event.begin();
+        }
+        
+        /* 
+         * the response arrived: add its latency to the "request.METHOD" histogram,
+         * count it & its body bytes ("requests.METHOD.STATUS", "bytes.METHOD") & emit a tac.Request JFR event
+         * only the first done() / failed() call on a Request counts
+         * takes in: int status, long bytes (body bytes read off the network; 0 for HEAD & 304)
+         */
+        public void done(int status, long bytes) {
+            if (this.finished) {
+                return;
+            }
+            
+            observe("request." + this.method, System.nanoTime() - this.start);
+            count("requests." + this.method + "." + status, 1);
+            count("bytes." + this.method, bytes);
+            commit(status, bytes);
+        }
+        
+        // the request failed before a response was read; counted as "requests.METHOD.failed"
+        public void failed() {
+            if (this.finished) {
+                return;
+            }
+            
+            count("requests." + this.method + ".failed", 1);
+            commit(-1, 0);
+        }
+        
+        // fill in & commit the JFR event if a recording wants it
+        private void commit(int status, long bytes) {
+            this.finished = true;
+            this.event.end();
+            
+            if (this.event.shouldCommit()) {
+                this.event.method = this.method;
+                this.event.url = this.url;
+                this.event.status = status;
+                this.event.bytes = bytes;
+                this.event.commit();
+            }
+        }
+    }
+    
+    /* 
+     * lock-free latency histogram over log-linear buckets: values under 16 ns get a bucket each,
+     * above that every power of two is split into 16 equal buckets (so a percentile is within ~6% of the true value)
+     */
+    private static class Histogram {
+        private static final int SUB_BUCKETS = 16;
+        private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS * 61);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        
+        // add one sample; negative values count as 0
+        private void record(long nanos) {
+            long value = Math.max(0, nanos);
+            this.counts.incrementAndGet(bucketOf(value));
+            this.total.increment();
+            this.sum.add(value);
+            this.max.accumulate(value);
+        }
+        
+        /* 
+         * smallest bucket upper bound with at least fraction of the samples at or below it (capped at the max sample)
+         * takes in: double fraction (0.5 for p50)
+         * returns: long ns
+         */
+        private long percentile(double fraction) {
+            long target = (long) Math.ceil(fraction * this.total.sum());
+            long seen = 0;
+            
+            for (int i = 0; i < this.counts.length(); i++) {
+                seen += this.counts.get(i);
+                
+                if (seen >= target && seen > 0) {
+                    return Math.min(upperBound(i), this.max.get());
+                }
+            }
+            
+            return this.max.get();
+        }
+        
+        // {count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis}
+        private String toJson() {
+            long n = this.total.sum();
+            return "{\"count\": " + n
+                + ", \"meanMillis\": " + millis(n == 0 ? 0 : this.sum.sum() / n)
+                + ", \"p50Millis\": " + millis(percentile(0.50))
+                + ", \"p95Millis\": " + millis(percentile(0.95))
+                + ", \"p99Millis\": " + millis(percentile(0.99))
+                + ", \"maxMillis\": " + millis(this.max.get()) + "}";
+        }
+        
+        // bucket index of a non-negative value
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exp - 4)) & (SUB_BUCKETS - 1);
+            return (exp - 3) * SUB_BUCKETS + sub;
+        }
+        
+        // largest value that falls in bucket i
+        private static long upperBound(int i) {
+            if (i < SUB_BUCKETS) {
+                return i;
+            }
+            
+            int exp = i / SUB_BUCKETS + 3;
+            int sub = i % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exp - 4)) - 1;
+        }
+    }
+    
+    // JFR event for one stage of the run
+    @Name("tac.Stage")
+    @Label("TAC Stage")
+    @Category("TAC Metadata")
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+    }
+    
+    // JFR event for one HTTP request
+    @Name("tac.Request")
+    @Label("TAC Request")
+    @Category("TAC Metadata")
+    static class RequestEvent extends Event {
+        @Label("Method")
+        String method;
+        
+        @Label("URL")
+        String url;
+        
+        @Label("Status")
+        int status;
+        
+        @Label("Body Bytes")
+        @DataAmount
+        long bytes;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+public class NormalizerBenchmark {
+    /* 
+     * main method for class
+     * take the text of every fixture page (args[0], default fixtures/abs; lines joined with " " the way
+     * ArticleExtractor collects them) and run each clean-up chain Article uses on it twice:
+     * once with the old String.replaceAll / String.matches calls, once with TextNormalizer
+     * check both give the same String for every input, then time them the way PipelineBenchmark does:
+     * args[1] warm-up iterations, then args[1] measured iterations (default 10), each going over the inputs
+     * again & again for args[2] ms (default 200), the two versions taking turns so both see the same machine
+     * prints ns per call (mean +/- standard deviation over the iterations) & bytes allocated per call for each
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "fixtures/abs");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 200;
+        List<String> inputs = new ArrayList<>();
+        
+        for (LinkedList<String> page : ParserBenchmark.loadPages(dir)) {
+            inputs.add(String.join(" ", page));
+        }
+        
+        compare("title", inputs, iterations, millis,
+                s -> regexStripChars(s.replaceAll("\\s+|<p>|</p>", " "), " ,"),
+                s -> TextNormalizer.stripChars(TextNormalizer.collapseWhitespaceAndParagraphs(s), " ,"));
+        compare("author", inputs, iterations, millis,
+                s -> regexStripChars(s, " ,")
+                    .replaceAll("\\s+", " ")
+                    .replaceAll("([A-Za-z])[.]([A-Za-z]+)", "$1. $2"),
+                s -> TextNormalizer.spaceAfterInitials(
+                    TextNormalizer.collapseWhitespace(TextNormalizer.stripChars(s, " ,"))));
+        compare("abstract", inputs, iterations, millis,
+                s -> s.replaceAll("<p>|</p>", " ")
+                    .strip()
+                    .replaceAll("\\s+", " ")
+                    .replaceAll("\\s<br>\\s|\\s<br>|<br>\\s", "<br>"),
+                s -> TextNormalizer.tightenBreaks(TextNormalizer.collapseWhitespace(
+                    TextNormalizer.paragraphsToSpaces(s).strip())));
+        compare("keyword", inputs, iterations, millis,
+                s -> regexStripChars(s.replaceAll("Keywords:|<p>|</p>", ""), " .")
+                    .replaceAll("\\s+", " ")
+                    .replaceAll("\s[-]\s|[-]\s|\s[-]", "-"),
+                s -> TextNormalizer.joinHyphens(TextNormalizer.collapseWhitespace(
+                    TextNormalizer.stripChars(TextNormalizer.removeTokens(s, "Keywords:", "<p>", "</p>"), " ."))));
+        compare("split", inputs, iterations, millis,
+                s -> String.join("|", s.split(",|;")),
+                s -> String.join("|", TextNormalizer.split(s, ",;")));
+    }
+    
+    /* 
+     * check regex & normalizer agree on every input, then time both & print one result line
+     * warm-up & measured iterations alternate between the two, so a slow patch of the machine hits both alike
+     * takes in: String name, List<String> inputs, int iterations, long millis, UnaryOperator regex,
+     *           UnaryOperator normalizer
+     */
+    private static void compare(String name, List<String> inputs, int iterations, long millis,
+                                UnaryOperator<String> regex, UnaryOperator<String> normalizer) {
+        for (String input : inputs) {
+            if (!regex.apply(input).equals(normalizer.apply(input))) {
+                throw new IllegalStateException(name + " differs on: " + input);
+            }
+        }
+        
+        for (int i = 0; i < iterations; i++) {
+            iterate(inputs, millis, regex);
+            iterate(inputs, millis, normalizer);
+        }
+        
+        double[][] before = new double[iterations][];
+        double[][] after = new double[iterations][];
+        
+        for (int i = 0; i < iterations; i++) {
+            before[i] = iterate(inputs, millis, regex);
+            after[i] = iterate(inputs, millis, normalizer);
+        }
+        
+        double[] b = summarize(before);
+        double[] a = summarize(after);
+        System.out.printf("%-9s regex %,9.0f +/- %,7.0f ns %,7.0f B | normalizer %,9.0f +/- %,7.0f ns %,7.0f B |"
+                          + " %5.1fx%n", name, b[0], b[1], b[2], a[0], a[1], a[2], b[0] / a[0]);
+    }
+    
+    /* 
+     * mean & standard deviation of the ns per call of some iterations, with their mean bytes per call
+     * takes in: double[][] results (from iterate)
+     * returns: double[] { mean ns per call, standard deviation, bytes per call }
+     */
+    private static double[] summarize(double[][] results) {
+        double mean = Arrays.stream(results).mapToDouble(r -> r[0]).average().orElse(0);
+        double variance = Arrays.stream(results).mapToDouble(r -> (r[0] - mean) * (r[0] - mean)).sum()
+            / Math.max(1, results.length - 1);
+        double bytes = Arrays.stream(results).mapToDouble(r -> r[1]).average().orElse(0);
+        return new double[] { mean, Math.sqrt(variance), bytes };
+    }
+    
+    /* 
+     * run op over every input again & again until millis have passed (at least once)
+     * takes in: List<String> inputs, long millis, UnaryOperator op
+     * returns: double[] { ns per call, bytes allocated per call }
+     */
+    private static double[] iterate(List<String> inputs, long millis, UnaryOperator<String> op) {
+        long deadline = millis * 1_000_000;
+        long checksum = 0;
+        long calls = 0;
+        long bytes = Metrics.allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        
+        do {
+            for (String input : inputs) {
+                checksum += op.apply(input).length();
+            }
+            
+            calls += inputs.size();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < deadline);
+        
+        bytes = Metrics.allocatedBytes() - bytes;
+        
+        if (checksum == 42) {
+            System.out.println();
+        }
+        
+        return new double[] { (double) elapsed / calls, (double) bytes / calls };
+    }
+    
+    // the regex stripChars Article used before TextNormalizer
+    private static String regexStripChars(String s, String chars) {
+        while (s.matches(String.format("[%s].*", chars))) {
+            s = s.substring(1);
+        }
+        
+        while (s.matches(String.format(".*[%s]", chars))) {
+            s = s.substring(0, s.length() - 1);
+        }
+        
+        return s;
+    }
+}
@@ -0,0 +1,384 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class OutputWriter implements Closeable {
+    private static final int MAX_BATCH = 16;
+    private static final int TEMP_BUFFER = 64 * 1024;
+    private static final Pending STOP = new Pending(null, null, null);
+    
+    private final ArrayBlockingQueue<Pending> queue;
+    private final Listener listener;
+    private final Thread thread;
+    private boolean closed = false;
+    
+    /* 
+     * Constructor for OutputWriter class
+     * write-behind output: the caller streams each file into a TempFile next to it (hashed as it goes, never held
+     * whole) & hands it to submit(), which returns at once; one writer thread finishes them while the next ones
+     * are rendered
+     * each temp file is forced & renamed over its target, so a crash leaves either the old file or the new one,
+     * never half of one; a temp file whose bytes hash the same as what is already on disk is deleted instead
+     * (the file's modification time stays as it was)
+     * the writer takes whatever is queued (up to MAX_BATCH files) at once: forces them to disk one after another,
+     * renames them & forces each directory once, so the syncs of a batch are issued together
+     * listener (if not null) is shown each file the writer is about to replace, on the writer thread, while the old
+     * file is still there (see Listener)
+     * takes in: int capacity (files queued before submit() blocks; bounds the temp files waiting on disk),
+     *           Listener listener (may be null)
+     */
+    public OutputWriter(int capacity, Listener listener) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        this.listener = listener;
+        this.thread = new Thread(this::drain, "output writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+    
+    // OutputWriter without a listener
+    public OutputWriter(int capacity) {
+        this(capacity, null);
+    }
+    
+    /* 
+     * close temp & queue it to replace the file at path, waiting while the queue is full
+     * from here the writer owns temp: it is renamed over path or deleted (also if this throws)
+     * takes in: Path path, TempFile temp (made for path)
+     * returns: CompletableFuture that completes with true once the file is on disk, false if it already held
+     *          these bytes, or exceptionally with the IOException that stopped it
+     */
+    public CompletableFuture<Boolean> submit(Path path, TempFile temp) throws IOException {
+        Pending pending = new Pending(path, temp, new CompletableFuture<>());
+        
+        try {
+            temp.close();
+            
+            synchronized (this) {
+                if (this.closed) {
+                    throw new IllegalStateException("output writer is closed");
+                }
+            }
+            
+            this.queue.put(pending);
+        }
+        catch (InterruptedException e) {
+            temp.discard();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while queueing " + path);
+        }
+        catch (IOException | RuntimeException e) {
+            temp.discard();
+            throw e;
+        }
+        
+        return pending.result();
+    }
+    
+    /* 
+     * wait for every submitted file to be written & stop the writer thread
+     * (if the wait is interrupted the thread still finishes what was submitted, so every future completes)
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            
+            this.closed = true;
+        }
+        
+        try {
+            this.queue.put(STOP);
+            this.thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the output writer");
+        }
+    }
+    
+    // writer thread: write the queued files a batch at a time until STOP
+    private void drain() {
+        ArrayList<Pending> batch = new ArrayList<>(MAX_BATCH);
+        boolean stopping = false;
+        
+        while (!stopping) {
+            try {
+                batch.add(this.queue.take());
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            
+            this.queue.drainTo(batch, MAX_BATCH - 1);
+            stopping = batch.remove(STOP);
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+    
+    /* 
+     * put one batch on disk: delete the temp files of unchanged files, force every other temp file, rename them
+     * over their targets, then force each directory a rename happened in
+     * a file that fails is completed exceptionally (& its temp file deleted); the rest of the batch carries on
+     * takes in: List<Pending> batch
+     */
+    private void writeBatch(List<Pending> batch) {
+        long start = System.nanoTime();
+        LinkedHashMap<Pending, Path> temps = new LinkedHashMap<>();
+        LinkedHashSet<Path> dirs = new LinkedHashSet<>();
+        
+        for (Pending pending : batch) {
+            try {
+                if (unchanged(pending.path(), pending.temp())) {
+                    pending.temp().discard();
+                    Metrics.count("files.unchanged", 1);
+                    pending.result().complete(false);
+                }
+                else {
+                    if (this.listener != null) {
+                        this.listener.replacing(pending.path(), pending.temp().path());
+                    }
+                    
+                    temps.put(pending, pending.temp().path());
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                pending.temp().discard();
+                pending.result().completeExceptionally(e);
+            }
+        }
+        
+        for (Map.Entry<Pending, Path> temp : temps.entrySet()) {
+            Pending pending = temp.getKey();
+            
+            try {
+                try (FileChannel channel = FileChannel.open(temp.getValue(), StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                
+                Files.move(temp.getValue(), pending.path(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+                dirs.add(pending.path().toAbsolutePath().getParent());
+            }
+            catch (IOException | RuntimeException e) {
+                pending.result().completeExceptionally(e);
+                deleteQuietly(temp.getValue());
+            }
+        }
+        
+        for (Path dir : dirs) {
+            forceDirectory(dir);
+        }
+        
+        for (Pending pending : temps.keySet()) {
+            if (pending.result().complete(true)) {
+                Metrics.count("files.written", 1);
+            }
+        }
+        
+        if (!temps.isEmpty()) {
+            Metrics.observe("output.batch", System.nanoTime() - start);
+        }
+    }
+    
+    /* 
+     * true if the file at path already holds exactly temp's bytes: same size & same SHA-256
+     * (the file is only read when the sizes match; temp's hash was taken as it was written)
+     * takes in: Path path, TempFile temp
+     * returns: boolean
+     */
+    private static boolean unchanged(Path path, TempFile temp) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) != temp.size()) {
+            return false;
+        }
+        
+        MessageDigest sha256 = sha256();
+        ByteBuffer chunk = ByteBuffer.allocate(TEMP_BUFFER);
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(chunk) >= 0) {
+                sha256.update(chunk.flip());
+                chunk.clear();
+            }
+        }
+        
+        return MessageDigest.isEqual(sha256.digest(), temp.sha256());
+    }
+    
+    // force dir's entries (the renames) to disk; a platform that can't open a directory just skips it
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            // not supported here (e.g. Windows): the renames are as durable as the platform makes them
+        }
+    }
+    
+    // delete path, ignoring failure (it is a temp file that is being given up on)
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            // left behind as *.tmp
+        }
+    }
+    
+    // a fresh SHA-256 digest (every JDK has it)
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /* 
+     * file being rendered: a new temp file next to its target, written through a FileChannel (TEMP_BUFFER bytes
+     * at a time) & hashed (SHA-256) on the way, so the document is never held whole & the writer can tell an
+     * unchanged file without reading the new bytes again
+     * the temp file is created like any new file (not with createTempFile, whose owner-only permissions would
+     * end up on the output once it is renamed); it is not forced here, the writer does that in batches
+     */
+    public static class TempFile extends OutputStream {
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(TEMP_BUFFER);
+        private final MessageDigest sha256 = OutputWriter.sha256();
+        private long size = 0;
+        private byte[] digest;
+        private boolean failed = false;
+        
+        /* 
+         * Constructor for TempFile class
+         * creates <target>.<random hex>.tmp in target's directory (& the directory, if need be)
+         * takes in: Path target (the file this will replace)
+         */
+        public TempFile(Path target) throws IOException {
+            Path dir = target.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            this.path = dir.resolve(target.getFileName() + "."
+                                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                drain();
+            }
+            
+            this.buffer.put((byte) b);
+            this.sha256.update((byte) b);
+            this.size++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > this.buffer.remaining()) {
+                drain();
+            }
+            
+            if (len > this.buffer.remaining()) {
+                writeFully(ByteBuffer.wrap(b, off, len));
+            }
+            else {
+                this.buffer.put(b, off, len);
+            }
+            
+            this.sha256.update(b, off, len);
+            this.size += len;
+        }
+        
+        // write out what is buffered & close the channel; the file is finished (& its hash taken) once this returns
+        @Override
+        public void close() throws IOException {
+            if (this.digest != null) {
+                return;
+            }
+            
+            this.digest = this.sha256.digest();
+            
+            try {
+                drain();
+            }
+            finally {
+                this.channel.close();
+            }
+        }
+        
+        // close & delete the temp file, ignoring failure (it is being given up on)
+        public void discard() {
+            try {
+                this.channel.close();
+            }
+            catch (IOException e) {
+                // deleted below all the same
+            }
+            
+            deleteQuietly(this.path);
+        }
+        
+        // true if writing to the temp file failed (so an IOException from rendering is about the file, not the XML)
+        public boolean failed() {
+            return this.failed;
+        }
+        
+        // where the temp file is
+        public Path path() {
+            return this.path;
+        }
+        
+        // bytes written
+        public long size() {
+            return this.size;
+        }
+        
+        // SHA-256 of everything written (closes the file)
+        public byte[] sha256() throws IOException {
+            close();
+            return this.digest;
+        }
+        
+        // write out what is buffered
+        private void drain() throws IOException {
+            writeFully(this.buffer.flip());
+            this.buffer.clear();
+        }
+        
+        // write all of bytes to the channel, noting a failure
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            try {
+                while (bytes.hasRemaining()) {
+                    this.channel.write(bytes);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                this.failed = true;
+                throw e;
+            }
+        }
+    }
+    
+    /* 
+     * told about every file an OutputWriter is about to replace (or create) with different bytes, before anything
+     * of it is written: the old file, if any, is still at path; files left unchanged are not shown
+     * called on the writer thread, one file at a time; it holds up the writes, so it should be quick, & it must
+     * not throw (a listener keeps its own problems)
+     */
+    public interface Listener {
+        // path is about to be replaced by the finished temp file at rendered (which must only be read)
+        void replacing(Path path, Path rendered);
+    }
+    
+    // one file waiting for the writer thread & the future its submitter holds
+    private record Pending(Path path, TempFile temp, CompletableFuture<Boolean> result) {}
+}
@@ -0,0 +1 @@
+record PageRange(int startPage, int endPage) {}
@@ -0,0 +1,482 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.*;
+import java.util.stream.*;
+
+public class ParserBenchmark {
+    /* 
+     * main method for class
+     * load every abstract page in the fixture directory (args[0], default fixtures/abs) as stripped lines
+     * check the single-pass ArticleExtractor gives the same fields as the old multi-pass scans on every page
+     * then time both over args[1] rounds (default 50) after as many warm-up rounds, and print ns per article
+     * no network access: pages come from disk & no file sizes are probed
+     * the fixture pages are synthetic (rebuilt from metadata/*.xml), so the speedup holds for them only,
+     * not necessarily for real abs.html pages
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "fixtures/abs");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        List<LinkedList<String>> pages = loadPages(dir);
+        
+        int mismatches = 0;
+        
+        for (int i = 0; i < pages.size(); i++) {
+            ArticleExtractor.Fields expected = new MultiPassParser(pages.get(i)).fields();
+            ArticleExtractor.Fields actual = ArticleExtractor.extract(pages.get(i));
+            
+            if (!sameFields(expected, actual)) {
+                System.out.printf("mismatch on page %d: %s vs %s%n", i, expected, actual);
+                mismatches++;
+            }
+        }
+        
+        System.out.printf("%d pages, %d mismatches%n", pages.size(), mismatches);
+        
+        double multiPass = time(pages, rounds, lines -> new MultiPassParser(lines).fields());
+        double singlePass = time(pages, rounds, ArticleExtractor::extract);
+        
+        System.out.printf("multi-pass:  %,10.0f ns/article%n", multiPass);
+        System.out.printf("single-pass: %,10.0f ns/article%n", singlePass);
+        System.out.printf("speedup:     %10.2fx%n", multiPass / singlePass);
+    }
+    
+    /* 
+     * read every *.html file under dir (sorted by name) & split it into stripped lines the way Article does
+     * takes in: Path dir
+     * returns: List of LinkedList<String> pages
+     */
+    static List<LinkedList<String>> loadPages(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> paths = files.filter(p -> p.toString().endsWith(".html")).sorted().toList();
+            ArrayList<LinkedList<String>> pages = new ArrayList<>(paths.size());
+            
+            for (Path path : paths) {
+                pages.add(Arrays.stream(Files.readString(path).split("\n"))
+                    .map(String::strip)
+                    .collect(Collectors.toCollection(LinkedList::new)));
+            }
+            
+            return pages;
+        }
+    }
+    
+    /* 
+     * run parser over every page, rounds times to warm up & rounds times measured
+     * a checksum of the results is kept so the JIT can't drop the work
+     * takes in: List of pages, int rounds, Function parser
+     * returns: mean ns per page over the measured rounds
+     */
+    private static double time(List<LinkedList<String>> pages, int rounds,
+                               Function<LinkedList<String>, ArticleExtractor.Fields> parser) {
+        long checksum = 0;
+        
+        for (int r = 0; r < rounds; r++) {
+            for (LinkedList<String> page : pages) {
+                checksum += parser.apply(page).title().length();
+            }
+        }
+        
+        long start = System.nanoTime();
+        
+        for (int r = 0; r < rounds; r++) {
+            for (LinkedList<String> page : pages) {
+                checksum += parser.apply(page).title().length();
+            }
+        }
+        
+        long elapsed = System.nanoTime() - start;
+        
+        if (checksum == 42) {
+            System.out.println();
+        }
+        
+        return (double) elapsed / ((long) rounds * pages.size());
+    }
+    
+    // field-by-field comparison (records compare arrays by reference)
+    private static boolean sameFields(ArticleExtractor.Fields a, ArticleExtractor.Fields b) {
+        return Objects.equals(a.pdfSource(), b.pdfSource())
+            && a.title().equals(b.title())
+            && Arrays.equals(a.authors(), b.authors())
+            && a.abstractText().equals(b.abstractText())
+            && Arrays.equals(a.keywords(), b.keywords())
+            && a.volume() == b.volume() && a.year() == b.year()
+            && a.startPage() == b.startPage() && a.endPage() == b.endPage();
+    }
+    
+    /* 
+     * the field scans Article used before ArticleExtractor, kept as the baseline to compare against:
+     * each init* method starts a new iterator at the top of htmlLines & scans for its own markers
+     */
+    static class MultiPassParser {
+        private final LinkedList<String> htmlLines;
+        private final String title;
+        
+        MultiPassParser(LinkedList<String> htmlLines) {
+            this.htmlLines = htmlLines;
+            this.title = initTitle();
+        }
+        
+        // every field, cleaned the same way Article does
+        ArticleExtractor.Fields fields() {
+            IssueIdent issue = initIssueIdent();
+            PageRange pages = initPages();
+            return new ArticleExtractor.Fields(initPdfSource(), this.title, initAuthors(), initAbstract(),
+                                               initKeywords(), issue.volume(), issue.year(),
+                                               pages.startPage(), pages.endPage());
+        }
+        
+        /* 
+         * Iterate over htmlLines to find pdf file names; if a line doesn't contain "citation_pdf_url" & matches the pattern: [any char][any digit][.]["pdf"][any char]
+         * split lines by double quotes ("), extract string between quotes and assign to init, then break
+         * if init is null, iterate over htmlLines, if line matches pattern [any char][any digit][.]["dvi" OR "ps"][any char]:
+         *    split lines by double quotes ("), extract string between quotes and assign to init
+         *    then replace any notion of [.]"dvi" OR [.]"ps" with ".pdf", then break
+         * returns String init, which is pdf file name 
+         */
+        private String initPdfSource() {
+            String init = null;
+            
+            for (String line : this.htmlLines) {
+                if (!line.contains("citation_pdf_url") && line.matches(".*\\d[.]pdf.*")) {
+                    init = line.split("\"")[1];
+                    break;
+                }
+            }
+            
+            if (init == null) {
+                for (String line : this.htmlLines) {
+                    if (line.matches(".*\\d[.](dvi|ps).*")) {
+                        init = line.split("\"")[1];
+                        init = init.replaceAll("[.](dvi|ps)", ".pdf");
+                        break;
+                    }
+                }
+            }
+            
+            return init;
+        }
+        
+        /* 
+         * extracting the text between the first <h1> tags in the HTML by:
+         *    1. iterating over htmlLines, skip lines until an <h1> tag is found, move to the next line.
+         *    2. Append lines to a StringBuilder `sb` with a " " until a </h1> tag is found.
+         * init String comprises: replacing any whitespace surrounding <p> or </> with " ", then stripChars with " ," substring
+         * returns: hard coded title corrections from TITLE_CORRECTIONS, getOrDefault gets val associated with key init or replaces with init val
+         */
+        private String initTitle() {
+            StringBuilder sb = new StringBuilder();
+            Iterator<String> htmlIter = this.htmlLines.iterator();
+            String line = htmlIter.next();
+            
+            while (!line.contains("<h1>")) {
+                line = htmlIter.next();
+            }
+            
+            line = htmlIter.next();
+            
+            while (!line.contains("</h1>")) {
+                sb.append(line).append(" ");
+                line = htmlIter.next();
+            }
+            
+            String init = stripChars(sb.toString().replaceAll("\\s+|<p>|</p>", " "), " ,");
+            return Corrections.TITLE_CORRECTIONS.getOrDefault(init, init);
+        }
+        
+        /* 
+         * extracting the text between the first <h1> and <h2> tags in the HTML by:
+         *    1. iterating over htmlLines, skip lines until an </h1> tag is found, move to the next line.
+         *    2. Skip empty lines or lines containing <h2> tags.
+         *    3. Append lines to a StringBuilder `sb` with a " " until a <h2> or </h2> tag is found.
+         * authorList String[] is created by converting `sb` to string, replacing " and "  with "," & split on "," 
+         * for strings in in authorList:
+         *    1. create author string from stripChars() on " ," substrings, replacing all extra whitespaces with "", adding a space after "." between two letters.
+         * if author is not an "":
+         *    1. if author string is "Jr.", replace last val of init with ", Jr." OR if not just add to init
+         * return: converted init to an Array of Strings
+         */
+        private String[] initAuthors() {
+            StringBuilder sb = new StringBuilder();
+            Iterator<String> htmlIter = this.htmlLines.iterator();
+            String line = htmlIter.next();
+            
+            while (!line.contains("</h1>")) {
+                line = htmlIter.next();
+            }
+            
+            line = htmlIter.next();
+            
+            while (line.equals("") || line.contains("<h2>")) {
+                line = htmlIter.next();
+            }
+            
+            while(!line.contains("<h2>") && !line.contains("</h2>")) {
+                sb.append(line).append(" ");
+                line = htmlIter.next();
+            }
+            
+            String[] authorList = sb.toString().replaceAll(" and ", ",").split(",");
+            LinkedList<String> init = new LinkedList<>();
+            
+            for (String s : authorList) {
+                String author = stripChars(s, " ,")
+                    .replaceAll("\\s+", " ")
+                    .replaceAll("([A-Za-z])[.]([A-Za-z]+)", "$1. $2");
+                
+                if (!author.equals("")) {
+                    
+                    if (author.equals("Jr.")) {
+                        init.add(init.removeLast() + ", Jr.");
+                    }
+                    else {
+                        init.add(author);
+                    }
+                }
+            }
+            
+            return init.toArray(String[]::new);
+        }
+        
+        /* 
+         * iterate over htmlLines until a line contains "</h2>", "<p>", or "Keywords:"
+         * if a line doesn't contain "Keywords:" then add the line to StringBuilder `sb`  and a " " before moving to next
+         * abstractInit is created by converting `sb` to string, replacing "<p>" or "</p>" with " ", strip whitespaces, 
+         * replacing any whitespaces with " ", & if a <br> tag is surrounded by whitespace or adjacent with whitespace, replace with single <br>
+         * with the changes iterate again until  a line contains "Keywords:", a <p> while ignoring </p>
+         * if a line does not contain the string "</p>" or is not exactly equal to "</p>" then add the line to StringBuilder `sb`  and a " " before moving to next
+         * now we can create classifInit from `sb` by replacing "<p>" or "</p>" with " ", strip whitespaces, 
+         * replacing ", with ", " & andy whitespaces with a singular " "
+         * if classifInit does not end with ".", add "."
+         * now creating `sb` correctly by surrounding abstractInit and classifInit with opening and closing <p> tags
+         * returns: `sb` as a String
+         */
+        private String initAbstract() {
+            StringBuilder sb = new StringBuilder();
+            Iterator<String> htmlIter = this.htmlLines.iterator();
+            String line = htmlIter.next();
+            
+            while (!line.contains("</h2>")) {
+                line = htmlIter.next();
+            }
+            
+            while (!line.contains("<p>")) {
+                line = htmlIter.next();
+            }
+            
+            line = htmlIter.next();
+            
+            while (!line.contains("Keywords:")) {
+                sb.append(line).append(" ");
+                line = htmlIter.next();
+            }
+            
+            String abstractInit = sb
+                .toString()
+                .replaceAll("<p>|</p>", " ")
+                .strip()
+                .replaceAll("\\s+", " ")
+                .replaceAll("\\s<br>\\s|\\s<br>|<br>\\s", "<br>");
+            
+            sb.setLength(0);
+            
+            while(!line.contains("Keywords:")) {
+                line = htmlIter.next();
+            }
+            
+            line = htmlIter.next();
+            
+            while (!line.contains("<p>") || line.equals("</p>")) {
+                line = htmlIter.next();
+            }
+            
+            while (!line.contains("</p>") || !line.equals("</p>")) {
+                sb.append(line).append(" ");
+                line = htmlIter.next();
+            }
+            
+            String classifInit = sb.toString()
+                .replaceAll("<p>|</p>", " ")
+                .strip()
+                .replaceAll(",", ", ")
+                .replaceAll("\\s+", " ");
+            
+            sb.setLength(0);
+            
+            if (!classifInit.endsWith(".")) {
+                classifInit += ".";
+            }
+            
+            sb.append("<p>")
+                .append(abstractInit)
+                .append("</p><p>")
+                .append(classifInit)
+                .append("</p>");
+            
+            return sb.toString();
+        }
+        
+        /* 
+         * iterate over htmlLines til line contains "Keywords:" but does not end with it
+         * add the line to StringBuilder `sb` and a space
+         * once a </p> html tag is found, add the line to `sb` and a space
+         * create an Array of Strings `keywordList` from splitting `sb` at either the ',' or ';'
+         * for each String in keywordList:
+         *    1. replace all subtrings of "Keywords:", or "<p>", or "</p>" with ", "
+         *    2. use stripChars() to remove any occurrences of " ." from the beginning and end of string
+         *    3. replace any whitespace chars with " " 
+         *    4. if a hyphen is surrounded by whitespace or adjacent with whitespace, replace with single hyphen
+         * if a keyword is not "" & if our LinkedList is both !empty && its last node ends with "-"; add the last node + keyword to the LinkedList
+         * else: just add the keyword
+         * then create a String[] with the values from init
+         * returns string[]
+         */
+        private String[] initKeywords() {
+            StringBuilder sb = new StringBuilder();
+            Iterator<String> htmlIter = this.htmlLines.iterator();
+            String line = htmlIter.next();
+            
+            while (!line.contains("Keywords:")) {
+                line = htmlIter.next();
+            }
+            
+            if (line.endsWith("Keywords:")) {
+                line = htmlIter.next();
+            }
+            
+            sb.append(line).append(" ");
+            
+            while (!line.contains("</p>")) {
+                sb.append(line).append(" ");
+                line = htmlIter.next();
+            }
+            
+            String[] keywordList = sb.toString().split(",|;");
+            LinkedList<String> init = new LinkedList<>();
+            
+            for (String s : keywordList) {
+                String keyword = stripChars(s.replaceAll("Keywords:|<p>|</p>", ""), " .")
+                    .replaceAll("\\s+", " ")
+                    .replaceAll("\s[-]\s|[-]\s|\s[-]", "-");
+                
+                if (!keyword.equals("")) {
+                    if (!init.isEmpty() && init.getLast().endsWith("-")) {
+                        init.add(init.removeLast() + keyword);
+                    }
+                    else {
+                        init.add(keyword);
+                    }
+                }
+            }
+            
+            return init.toArray(String[]::new);
+        }
+        
+        /* 
+         * iterate over htmlLines LinkedList; if line doesn't contain Strings "Keywords:" or "Vol.", or ends with "Keywords:" move to next
+         * iterator issueInfo splits array lines at blank space, String elem is issueInfo line after removing any occurrences of " ," from the beginning and end of string
+         * continue stripChars() til "Vol." is all that remains
+         * volumeInit follows same logic; parse String issueInfo as an Int, remove any occurrences of " ," from the beginning and end of string
+         * same for yearElem though if the string starts with "CT" start parsing as Int at index 3
+         * create a new issueIdent obj of VolumeInit, yearInit
+         * returns: initIssueIdent
+         */
+        private IssueIdent initIssueIdent() {
+            Iterator<String> htmlIter = this.htmlLines.iterator();
+            String line = htmlIter.next();
+            
+            while (!line.contains("Keywords:")) {
+                line = htmlIter.next();
+            }
+            
+            if (line.endsWith("Keywords:")) {
+                line = htmlIter.next();
+            }
+            
+            while (!line.contains("Vol.")) {
+                line = htmlIter.next();
+            }
+            
+            Iterator<String> issueInfo = Arrays.asList(line.split(" ")).iterator();
+            String elem = stripChars(issueInfo.next(), " ,");
+            
+            while (!elem.equals("Vol.")) {
+                elem = stripChars(issueInfo.next(), " ,");
+            }
+            
+            int volumeInit = Integer.parseInt(stripChars(issueInfo.next(), " ,"));
+            int yearInit;
+            String yearElem = stripChars(issueInfo.next(), " ,");
+            
+            if (yearElem.startsWith("CT")) {
+                yearInit = Integer.parseInt(yearElem.substring(3));
+            }
+            else {
+                yearInit = Integer.parseInt(yearElem);
+            }
+            
+            return new IssueIdent(volumeInit, yearInit);
+        }
+        
+        /* 
+         * check if any pages need corrections from Corrections
+         * initalize page pattern reg ex for method to recognize i.e. "pp X-Y", "ppX-Y", "pp. X-Y", "pp.X-Y", "pp .X-Y"
+         * match pattern against htmlLines
+         * new matcher pageMatch finds pattern of 1+ digits, followed by a hyphen, then 1+ digits; find page numbers amongst page patterns
+         * find next subsequence that matches the sequence input of pageMatch 
+         * group all those page sequences together in String array pagelist, split at hyphen
+         * update init record with PageRange which consists of first and last integer found in pageList String at index
+         * returns: PageRange record init
+         */
+        private PageRange initPages() {
+            PageRange init;
+            
+            if (Corrections.PAGE_CORRECTIONS.containsKey(this.title)) {
+                init = Corrections.PAGE_CORRECTIONS.get(this.title);
+            }
+            else {
+                Iterator<String> htmlIter = this.htmlLines.iterator();
+                Pattern pattern = Pattern.compile(String.format("(%s|%s|%s|%s|%s)",
+                                                        "pp \\d+-+\\d+",
+                                                                "pp\\d+-+\\d+",
+                                                                "pp[.] \\d+-+\\d+",
+                                                                "pp[.]\\d+-+\\d+",
+                                                                "pp [.]\\d+-+\\d+"));
+                Matcher matcher = pattern.matcher(htmlIter.next());
+                
+                while (!matcher.find()) {
+                    matcher = pattern.matcher(htmlIter.next());
+                }
+                
+                Matcher pageMatch = Pattern.compile("\\d+-+\\d+").matcher(matcher.group());
+                pageMatch.find();
+                String[] pageList = pageMatch.group().split("-");
+                init = new PageRange(Integer.parseInt(pageList[0]),
+                                     Integer.parseInt(pageList[pageList.length - 1]));
+            }
+            
+            return init;
+        }
+        
+        /* 
+         * remove any occurrences of sequences in chars from the beginning and end of s string
+         * repeatedly remove first character of s if it matches any character in chars
+         * remove last character of s if any sequence in chars is present in s.
+         * takes in: String s & String chars
+         * returns: String s
+         */
+        private static String stripChars(String s, String chars) {
+            while (s.matches(String.format("[%s].*", chars))) {
+                s = s.substring(1);
+            }
+            
+            while (s.matches(String.format(".*[%s]", chars))) {
+                s = s.substring(0, s.length() - 1);
+            }
+            
+            return s;
+        }
+    }
+}
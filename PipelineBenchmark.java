@@ -0,0 +1,195 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+public class PipelineBenchmark {
+    /* 
+     * main method for class
+     * benchmark the offline steps of a run over the fixture pages (args[0], default fixtures/abs):
+     *    article:      new Article(html) for every page (no file size probe)
+     *    authorIDs:    a fresh AuthorRegistry assigning ids over the parsed volumes
+     *    buildJournal: Journal.build from the parsed, sorted volumes
+     *    render:       XmlDocument.writeTo for every volume, into a Writer that only counts chars
+     * each benchmark runs args[1] warm-up iterations, then args[1] measured iterations (default 5),
+     * each iteration repeating the step for args[2] ms (default 500)
+     * prints ns per op (mean +/- standard deviation over the iterations) & bytes allocated per op
+     * an op is one page for article, one volume for render & one whole call for the others
+     * a hand-rolled harness, not JMH (which won't take benchmarks in the default package); the fixture pages are
+     * synthetic (rebuilt from metadata/*.xml), so the figures compare versions rather than predict a real crawl
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "fixtures/abs");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        List<String> sources = loadSources(dir);
+        
+        Article[][] volumeArticles = parseVolumes(sources);
+        HashMap<Integer, String> volTitles = new HashMap<>();
+        Manifest.Entry[] entries = new Manifest.Entry[volumeArticles.length];
+        int[] fileIDFirsts = new int[volumeArticles.length];
+        int fileIDFirst = 1;
+        
+        for (int i = 0; i < volumeArticles.length; i++) {
+            Article[] articles = volumeArticles[i] == null ? new Article[0] : volumeArticles[i];
+            volTitles.put(i + 1, Integer.toString(i + 1));
+            entries[i] = new Manifest.Entry(i + 1, "", null, articles.length, Journal.getAuthors(articles));
+            fileIDFirsts[i] = fileIDFirst;
+            fileIDFirst += articles.length;
+        }
+        
+        HashMap<String, Integer> authorIDs = AuthorRegistry.inMemory().assign(entries);
+        Journal journal = Journal.build(volumeArticles, volTitles, fileIDFirsts, authorIDs);
+        Volume[] volumes = journal.getVolumes();
+        
+        System.out.printf("%d pages, %d volumes, %d authors%n", sources.size(), volumes.length, authorIDs.size());
+        System.out.printf("%-13s %10s %12s %12s%n", "benchmark", "ns/op", "+/-", "B/op");
+        
+        run("article", sources.size(), iterations, millis, () -> {
+            long checksum = 0;
+            
+            for (String source : sources) {
+                checksum += new Article(source).getTitle().length();
+            }
+            
+            return checksum;
+        });
+        run("authorIDs", 1, iterations, millis, () -> AuthorRegistry.inMemory().assign(entries).size());
+        run("buildJournal", 1, iterations, millis,
+            () -> Journal.build(volumeArticles, volTitles, fileIDFirsts, authorIDs).getVolumes().length);
+        run("render", volumes.length, iterations, millis, () -> {
+            CountingWriter out = new CountingWriter();
+            
+            for (Volume volume : volumes) {
+                try {
+                    journal.toXml(volume).writeTo(out);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            
+            return out.chars;
+        });
+    }
+    
+    /* 
+     * read every *.html file under dir (sorted by name) as one String, the way a fetched page reaches Article
+     * takes in: Path dir
+     * returns: List<String> page sources
+     */
+    static List<String> loadSources(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> paths = files.filter(p -> p.toString().endsWith(".html")).sorted().toList();
+            ArrayList<String> sources = new ArrayList<>(paths.size());
+            
+            for (Path path : paths) {
+                sources.add(Files.readString(path));
+            }
+            
+            return sources;
+        }
+    }
+    
+    /* 
+     * parse every page & group the articles by volume, each volume sorted by startPage as TACMetadata does
+     * takes in: List<String> sources
+     * returns: Article[][] (index i is volume i + 1; null for a volume with no pages)
+     */
+    private static Article[][] parseVolumes(List<String> sources) {
+        TreeMap<Integer, ArrayList<Article>> byVolume = new TreeMap<>();
+        
+        for (String source : sources) {
+            Article article = new Article(source);
+            byVolume.computeIfAbsent(article.getVolume(), v -> new ArrayList<>()).add(article);
+        }
+        
+        Article[][] volumeArticles = new Article[byVolume.isEmpty() ? 0 : byVolume.lastKey()][];
+        
+        for (Map.Entry<Integer, ArrayList<Article>> volume : byVolume.entrySet()) {
+            Article[] articles = volume.getValue().toArray(Article[]::new);
+            Arrays.sort(articles, Comparator.comparing(Article::getStartPage));
+            volumeArticles[volume.getKey() - 1] = articles;
+        }
+        
+        return volumeArticles;
+    }
+    
+    /* 
+     * time one benchmark & print its line
+     * every iteration calls op until millis have passed; warm-up iterations are run the same way & discarded
+     * allocation is read from the thread's allocated byte counter around the measured iterations
+     * takes in: String name, int opsPerCall, int iterations, long millis, LongSupplier op (returns a checksum)
+     */
+    private static void run(String name, int opsPerCall, int iterations, long millis, LongSupplier op) {
+        long checksum = 0;
+        
+        for (int i = 0; i < iterations; i++) {
+            checksum += iterate(op, millis)[1];
+        }
+        
+        double[] nsPerOp = new double[iterations];
+        long ops = 0;
+        long bytes = Metrics.allocatedBytes();
+        
+        for (int i = 0; i < iterations; i++) {
+            long[] result = iterate(op, millis);
+            long calls = result[2];
+            nsPerOp[i] = (double) result[0] / (calls * opsPerCall);
+            checksum += result[1];
+            ops += calls * opsPerCall;
+        }
+        
+        bytes = Metrics.allocatedBytes() - bytes;
+        double mean = Arrays.stream(nsPerOp).average().orElse(0);
+        double variance = Arrays.stream(nsPerOp).map(ns -> (ns - mean) * (ns - mean)).sum() / Math.max(1, iterations - 1);
+        
+        if (checksum == 42) {
+            System.out.println();
+        }
+        
+        System.out.printf("%-13s %,10.0f %,12.0f %,12.0f%n", name, mean, Math.sqrt(variance), (double) bytes / ops);
+    }
+    
+    /* 
+     * call op repeatedly until millis have passed (at least once)
+     * takes in: LongSupplier op, long millis
+     * returns: long[] { elapsed ns, checksum, calls }
+     */
+    private static long[] iterate(LongSupplier op, long millis) {
+        long deadline = millis * 1_000_000;
+        long checksum = 0;
+        long calls = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        
+        do {
+            checksum += op.getAsLong();
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < deadline);
+        
+        return new long[] { elapsed, checksum, calls };
+    }
+    
+    // Writer that only counts what is written, so render measures serialising without any I/O
+    private static class CountingWriter extends Writer {
+        private long chars = 0;
+        
+        @Override
+        public void write(char[] buf, int off, int len) { this.chars += len; }
+        
+        @Override
+        public void write(String str, int off, int len) { this.chars += len; }
+        
+        @Override
+        public void write(int c) { this.chars++; }
+        
+        @Override
+        public void flush() {}
+        
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,453 @@
+import java.io.*;
+import java.net.*;
+import java.time.*;
+import java.time.format.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class RequestScheduler {
+    private static final double DECREASE = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.5;
+    private static final double SMOOTHING = 0.2;
+    private static final long MAX_DELAY_MILLIS = 30_000;
+    // (lower case) parts of the messages of the plain IOExceptions java.net.http throws when a server drops or resets
+    // a connection, typically a kept-alive one it has timed out ("HTTP/1.1 header parser received no bytes")
+    private static final List<String> DROPPED_CONNECTION = List.of(
+        "received no bytes", "connection reset", "connection closed", "connection abort", "broken pipe", "goaway");
+    
+    private final ExecutorService pool;
+    private final ScheduledExecutorService timer;
+    private final int initialLimit, maxLimit, maxRetries;
+    private final boolean adaptive;
+    private final long baseDelayMillis;
+    private final HashMap<String, Host> hosts = new HashMap<>();
+    
+    /* 
+     * Constructor for RequestScheduler class
+     * requests run on a fixed pool of daemon worker threads shared by every host; each host gets its own queue &
+     * its own concurrency limit, adjusted with AIMD (additive increase, multiplicative decrease):
+     *    every response that comes back in good time raises the host's limit by 1/limit (about +1 per full window),
+     *    up to maxLimit
+     *    a 429/503 (or other transient failure), or latency creeping past LATENCY_TOLERANCE x the fastest the host
+     *    has been, halves it (at most once per round trip), down to 1
+     * transient failures are retried up to maxRetries times after a jittered exponential backoff (see backoffMillis);
+     * a Retry-After from the server pauses the whole host until then
+     * with maxLimit == initialLimit the limit never moves (backoff & Retry-After still apply)
+     * takes in: int threads (pool size), int initialLimit & maxLimit (concurrent requests per host),
+     *           int maxRetries, long baseDelayMillis (first backoff step)
+     */
+    public RequestScheduler(int threads, int initialLimit, int maxLimit, int maxRetries, long baseDelayMillis) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("need 1 <= initialLimit <= maxLimit: " + initialLimit + ", " + maxLimit);
+        }
+        
+        this.pool = Executors.newFixedThreadPool(threads, r -> daemon(r, "fetcher"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "fetcher-timer"));
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.adaptive = maxLimit > initialLimit;
+    }
+    
+    // scheduler that keeps every host at a fixed limit & never retries (the old Fetcher behaviour)
+    public RequestScheduler(int threads, int perHostLimit) {
+        this(threads, perHostLimit, perHostLimit, 0, 0);
+    }
+    
+    /* 
+     * run request on the worker pool once url's host has a free slot
+     * waiting requests are parked in the host's queue (never on a worker thread), as are retries waiting out a backoff
+     * a host's queue is split into lanes (one per journal sharing the scheduler) that take turns at its free slots,
+     * so a journal that queued a thousand pages on a host doesn't hold back another journal's requests to it
+     * request may be called more than once, so it must be safe to repeat
+     * takes in: String lane (e.g. the journal's name), String url (used for its host), Callable request
+     * returns: CompletableFuture completed with the request's result, or the last exception once retries run out
+     */
+    public <T> CompletableFuture<T> submit(String lane, String url, Callable<T> request) {
+        Host host;
+        
+        synchronized (this.hosts) {
+            host = this.hosts.computeIfAbsent(hostOf(url), h -> new Host(this.initialLimit));
+        }
+        
+        Attempt<T> attempt = new Attempt<>(host, lane, request);
+        enqueue(host, attempt, false);
+        return attempt.future;
+    }
+    
+    // submit in the default lane
+    public <T> CompletableFuture<T> submit(String url, Callable<T> request) {
+        return submit("", url, request);
+    }
+    
+    // current concurrency limit for url's host (initialLimit if it has not been seen yet)
+    public int limitOf(String url) {
+        synchronized (this.hosts) {
+            Host host = this.hosts.get(hostOf(url));
+            return host == null ? this.initialLimit : host.permits();
+        }
+    }
+    
+    // stop accepting work; queued requests & pending retries are abandoned, running ones finish
+    public void shutdown() {
+        this.timer.shutdownNow();
+        this.pool.shutdown();
+    }
+    
+    /* 
+     * true for failures worth retrying: a RetryableException (429, 502, 503, 504), a timeout,
+     * or a connection that was refused or dropped; java.net.http reports a dropped connection as an EOFException
+     * or a plain IOException (see DROPPED_CONNECTION), so those count too, as does any of these as a cause
+     * takes in: Throwable e
+     * returns: boolean
+     */
+    public static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof RetryableException
+                || t instanceof SocketTimeoutException
+                || t instanceof ConnectException
+                || t instanceof SocketException
+                || t instanceof EOFException
+                || t instanceof java.net.http.HttpTimeoutException
+                || (t instanceof IOException && isDroppedConnection(t.getMessage()))) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    // true if message is one java.net.http gives a dropped connection (see DROPPED_CONNECTION)
+    private static boolean isDroppedConnection(String message) {
+        if (message == null) {
+            return false;
+        }
+        
+        String lower = message.toLowerCase(Locale.ROOT);
+        return DROPPED_CONNECTION.stream().anyMatch(lower::contains);
+    }
+    
+    // true for the statuses a server sends when it is overloaded or briefly unavailable
+    public static boolean isRetryableStatus(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+    
+    /* 
+     * read a Retry-After header, given either as delta-seconds ("120") or an HTTP-date
+     * takes in: String value (may be null)
+     * returns: ms to wait from now, or 0 if there is no (usable) value
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        
+        try {
+            return Math.max(0, Long.parseLong(value.strip()) * 1000);
+        }
+        catch (NumberFormatException e) {
+            try {
+                ZonedDateTime when = ZonedDateTime.parse(value.strip(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(Instant.now(), when.toInstant()).toMillis());
+            }
+            catch (DateTimeParseException ignored) {
+                return 0;
+            }
+        }
+    }
+    
+    /* 
+     * delay before retry number retry (1 for the first): "full jitter" backoff, a random time between 0 &
+     * baseDelayMillis * 2^(retry - 1) (capped at MAX_DELAY_MILLIS), but never less than the server's Retry-After
+     * takes in: int retry, long retryAfterMillis
+     * returns: long ms
+     */
+    long backoffMillis(int retry, long retryAfterMillis) {
+        long ceiling = Math.min(MAX_DELAY_MILLIS, this.baseDelayMillis << Math.min(retry - 1, 20));
+        long jittered = ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.max(jittered, retryAfterMillis);
+    }
+    
+    /* 
+     * put attempt on its lane of host's queue (at the front for a retry, so it isn't starved by newer requests) & dispatch
+     * takes in: Host host, Attempt attempt, boolean retry
+     */
+    private void enqueue(Host host, Attempt<?> attempt, boolean retry) {
+        synchronized (host) {
+            host.offer(attempt, retry);
+        }
+        
+        dispatch(host);
+    }
+    
+    /* 
+     * hand queued attempts for host to the pool while it is under its limit & not paused by a Retry-After
+     * while paused, one wake-up is scheduled for the end of the pause
+     * takes in: Host host
+     */
+    private void dispatch(Host host) {
+        synchronized (host) {
+            long wait = host.pausedUntil - System.nanoTime();
+            
+            if (wait > 0) {
+                if (!host.wakeScheduled && host.hasPending()) {
+                    host.wakeScheduled = true;
+                    schedule(() -> {
+                        synchronized (host) {
+                            host.wakeScheduled = false;
+                        }
+                        
+                        dispatch(host);
+                    }, TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+                }
+                
+                return;
+            }
+            
+            while (host.inFlight < host.permits() && host.hasPending()) {
+                Attempt<?> attempt = host.poll();
+                host.inFlight++;
+                
+                try {
+                    this.pool.execute(() -> run(attempt));
+                }
+                catch (RejectedExecutionException e) {
+                    host.inFlight--;
+                    attempt.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+    
+    /* 
+     * call the request once & feed the outcome back into the host's limit
+     * success completes the future; a transient failure with retries left is queued again after backoffMillis;
+     * anything else fails the future
+     * takes in: Attempt attempt
+     */
+    private <T> void run(Attempt<T> attempt) {
+        Host host = attempt.host;
+        long start = System.nanoTime();
+        Throwable failure = null;
+        T result = null;
+        
+        try {
+            result = attempt.request.call();
+        }
+        catch (Throwable e) {
+            failure = e;
+        }
+        
+        long elapsed = System.nanoTime() - start;
+        boolean congested = failure != null && isTransient(failure);
+        long retryAfter = failure instanceof RetryableException re ? re.retryAfterMillis() : 0;
+        
+        synchronized (host) {
+            host.inFlight--;
+            
+            if (this.adaptive && failure == null) {
+                host.onSuccess(elapsed, this.maxLimit);
+            }
+            else if (this.adaptive && congested) {
+                host.onCongestion(elapsed);
+            }
+            
+            if (retryAfter > 0) {
+                host.pausedUntil = Math.max(host.pausedUntil, System.nanoTime() + retryAfter * 1_000_000);
+            }
+        }
+        
+        if (congested) {
+            Metrics.count("scheduler.congestion", 1);
+        }
+        
+        if (failure == null) {
+            attempt.future.complete(result);
+        }
+        else if (congested && attempt.retries < this.maxRetries) {
+            attempt.retries++;
+            Metrics.count("scheduler.retries", 1);
+            schedule(() -> enqueue(host, attempt, true), backoffMillis(attempt.retries, retryAfter));
+        }
+        else {
+            attempt.future.completeExceptionally(failure);
+        }
+        
+        dispatch(host);
+    }
+    
+    // run task on the timer after delayMillis; dropped quietly once the scheduler is shut down
+    private void schedule(Runnable task, long delayMillis) {
+        try {
+            this.timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+    
+    // daemon thread named name, so a stuck request never keeps the JVM alive
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+    
+    /* 
+     * host part of url, lower-cased; urls that fail to parse share a single "" bucket
+     * takes in: String url
+     * returns: String host
+     */
+    private static String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        }
+        catch (URISyntaxException e) {
+            return "";
+        }
+    }
+    
+    /* 
+     * a response the server asked us to retry (429, 502, 503, 504), with its Retry-After if it sent one
+     * thrown by the request so the scheduler can back off; surfaces to the caller if retries run out
+     */
+    public static class RetryableException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        private final int status;
+        private final long retryAfterMillis;
+        
+        /* 
+         * Constructor for RetryableException class
+         * takes in: int status, long retryAfterMillis (0 if none), String url
+         */
+        public RetryableException(int status, long retryAfterMillis, String url) {
+            super("HTTP " + status + " from " + url);
+            this.status = status;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+        
+        //
+        public int status() { return this.status; }
+        public long retryAfterMillis() { return this.retryAfterMillis; }
+    }
+    
+    // one queued request, the lane it was submitted in & how many times it has been retried
+    private static class Attempt<T> {
+        private final Host host;
+        private final String lane;
+        private final Callable<T> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private int retries = 0;
+        
+        // request for host, not yet tried
+        private Attempt(Host host, String lane, Callable<T> request) {
+            this.host = host;
+            this.lane = lane;
+            this.request = request;
+        }
+    }
+    
+    // queue, limit & latency state for one host; guarded by its own lock
+    private static class Host {
+        private final HashMap<String, ArrayDeque<Attempt<?>>> lanes = new HashMap<>();
+        private final ArrayDeque<String> turns = new ArrayDeque<>();
+        private int inFlight = 0;
+        private double limit;
+        private double smoothedNanos = 0;
+        private double baselineNanos = Double.MAX_VALUE;
+        private long lastDecrease;
+        private long pausedUntil;
+        private boolean wakeScheduled = false;
+        
+        // nanoTime can be negative, so the "never" timestamps are taken relative to now
+        private Host(int limit) {
+            this.limit = limit;
+            this.pausedUntil = System.nanoTime();
+            this.lastDecrease = this.pausedUntil - TimeUnit.HOURS.toNanos(1);
+        }
+        
+        /* 
+         * queue attempt on its lane; a lane that had nothing waiting joins the turn order
+         * (at the back, or at the front for a retry)
+         * takes in: Attempt attempt, boolean retry
+         */
+        private void offer(Attempt<?> attempt, boolean retry) {
+            ArrayDeque<Attempt<?>> lane = this.lanes.computeIfAbsent(attempt.lane, l -> new ArrayDeque<>());
+            
+            if (lane.isEmpty()) {
+                if (retry) {
+                    this.turns.addFirst(attempt.lane);
+                }
+                else {
+                    this.turns.addLast(attempt.lane);
+                }
+            }
+            
+            if (retry) {
+                lane.addFirst(attempt);
+            }
+            else {
+                lane.addLast(attempt);
+            }
+        }
+        
+        // true if any lane has an attempt waiting
+        private boolean hasPending() {
+            return !this.turns.isEmpty();
+        }
+        
+        // next attempt of the lane whose turn it is; the lane goes to the back of the turn order if it has more
+        private Attempt<?> poll() {
+            String name = this.turns.poll();
+            ArrayDeque<Attempt<?>> lane = this.lanes.get(name);
+            Attempt<?> attempt = lane.poll();
+            
+            if (!lane.isEmpty()) {
+                this.turns.addLast(name);
+            }
+            
+            return attempt;
+        }
+        
+        // whole number of requests allowed in flight
+        private int permits() {
+            return Math.max(1, (int) this.limit);
+        }
+        
+        /* 
+         * fold a successful request's latency into the running average; grow the limit while latency stays near
+         * the fastest seen, shrink it once latency has climbed past LATENCY_TOLERANCE x that
+         * takes in: long elapsed (ns), int maxLimit
+         */
+        private void onSuccess(long elapsed, int maxLimit) {
+            this.smoothedNanos = this.smoothedNanos == 0 ? elapsed
+                                                         : this.smoothedNanos + SMOOTHING * (elapsed - this.smoothedNanos);
+            this.baselineNanos = Math.min(this.baselineNanos, Math.max(this.smoothedNanos, 1_000_000));
+            
+            if (this.smoothedNanos > LATENCY_TOLERANCE * this.baselineNanos) {
+                onCongestion(elapsed);
+            }
+            else {
+                this.limit = Math.min(maxLimit, this.limit + 1 / this.limit);
+            }
+        }
+        
+        /* 
+         * halve the limit, unless it was already cut within the last round trip
+         * (one overloaded window usually fails several requests at once; it should only count once)
+         * takes in: long elapsed (ns, the failing request's time, standing in for a round trip)
+         */
+        private void onCongestion(long elapsed) {
+            long now = System.nanoTime();
+            long window = (long) Math.max(this.smoothedNanos, elapsed);
+            
+            if (now - this.lastDecrease >= window) {
+                this.limit = Math.max(1, this.limit * DECREASE);
+                this.lastDecrease = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+import java.util.zip.*;
+
+public class Shard {
+    private static final byte[] MAGIC = "TACSHRD1".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern FILE_NAME = Pattern.compile("shard-(\\d+)-of-(\\d+)\\.bin");
+    
+    private final int index;
+    private final int count;
+    
+    /* 
+     * Constructor for Shard class
+     * one worker's share of a sharded crawl: of the abstract pages listed on the journal's home page, in the order
+     * they are listed (volume by volume), shard index of count takes the index-th contiguous slice; the slices only
+     * split at page boundaries, so a volume may be shared by two neighbouring shards & is put back together by merge()
+     * takes in: int index (1 to count), int count
+     */
+    private Shard(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+    
+    /* 
+     * shard from its "i/n" spelling (i from 1 to n)
+     * takes in: String spec
+     * returns: Shard
+     */
+    public static Shard parse(String spec) {
+        Matcher matcher = Pattern.compile("(\\d+)/(\\d+)").matcher(spec.strip());
+        
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("shard must be i/n: " + spec);
+        }
+        
+        int index = Integer.parseInt(matcher.group(1));
+        int count = Integer.parseInt(matcher.group(2));
+        
+        if (index < 1 || index > count) {
+            throw new IllegalArgumentException("shard must be i/n with i from 1 to n: " + spec);
+        }
+        
+        return new Shard(index, count);
+    }
+    
+    //
+    public int getIndex() { return this.index; }
+    public int getCount() { return this.count; }
+    
+    // "shard-i-of-n": the shard's file name (plus ".bin") & checkpoint directory
+    public String getName() {
+        return "shard-" + this.index + "-of-" + this.count;
+    }
+    
+    // first page (inclusive) of this shard's slice of total pages
+    public int from(int total) {
+        return (int) ((long) total * (this.index - 1) / this.count);
+    }
+    
+    // last page (exclusive) of this shard's slice of total pages
+    public int to(int total) {
+        return (int) ((long) total * this.index / this.count);
+    }
+    
+    /* 
+     * write this shard's partial result to dir/shard-i-of-n.bin, for merge() to pick up
+     *    "TACSHRD1", int index, int count, home url, int total pages on the home page, int from, int to
+     *    int volume count, then each volume number & title (as read from the home page)
+     *    int page count, then for each page of the slice, in home page order: url, page hash, the page's fields
+     *    (ArticleCodec) & int pdf size
+     *    int CRC32 of everything before it
+     * written to a temp file & renamed, so merge() never sees half a shard
+     * takes in: Path dir, String home, int total, HashMap<Vol Num, Vol Title> volTitles,
+     *           List<Page<article index>> pages (the slice, in order), ArticleStore articles (sizes resolved)
+     */
+    public void write(Path dir, String home, int total, HashMap<Integer, String> volTitles,
+                      List<Fetcher.Page<Integer>> pages, ArticleStore articles) throws IOException {
+        Files.createDirectories(dir);
+        Path path = dir.resolve(getName() + ".bin");
+        Path tmp = Files.createTempFile(dir, getName(), ".tmp");
+        
+        try {
+            CRC32 crc = new CRC32();
+            
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmp)), crc))) {
+                out.write(MAGIC);
+                out.writeInt(this.index);
+                out.writeInt(this.count);
+                ArticleCodec.writeString(out, home);
+                out.writeInt(total);
+                out.writeInt(from(total));
+                out.writeInt(to(total));
+                out.writeInt(volTitles.size());
+                
+                for (Map.Entry<Integer, String> volTitle : new TreeMap<>(volTitles).entrySet()) {
+                    out.writeInt(volTitle.getKey());
+                    ArticleCodec.writeString(out, volTitle.getValue());
+                }
+                
+                out.writeInt(pages.size());
+                
+                for (Fetcher.Page<Integer> page : pages) {
+                    ArticleCodec.writeString(out, page.url());
+                    ArticleCodec.writeString(out, page.hash());
+                    ArticleCodec.write(out, articles.fields(page.value()));
+                    out.writeInt(articles.fileSize(page.value()));
+                }
+                
+                out.writeInt((int) crc.getValue());
+            }
+            
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+    
+    /* 
+     * read back every shard in dir & put the crawl together as if one process had made it
+     * all n shards of one shard count must be there, crawled from home, agreeing on the home page (page count &
+     * volume titles) & covering its pages end to end; the pages come back in home page order, so everything built
+     * from them (file ids, author ids, the XML) is what a single run builds
+     * takes in: Path dir, String home
+     * returns: Merged (volume titles, the articles with their pdf sizes, & the pages indexing into them)
+     */
+    public static Merged merge(Path dir, String home) throws IOException {
+        TreeMap<Integer, Path> files = shardFiles(dir);
+        HashMap<Integer, String> volTitles = null;
+        ArticleStore articles = new ArticleStore(1024);
+        ArrayList<Fetcher.Page<Integer>> pages = new ArrayList<>();
+        int total = -1;
+        
+        for (Map.Entry<Integer, Path> entry : files.entrySet()) {
+            Path file = entry.getValue();
+            CRC32 crc = new CRC32();
+            
+            try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                     new BufferedInputStream(Files.newInputStream(file)), crc))) {
+                byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+                
+                if (!Arrays.equals(magic, MAGIC)) {
+                    throw new IOException("not a shard file: " + file);
+                }
+                
+                if (in.readInt() != entry.getKey() || in.readInt() != files.size()) {
+                    throw new IOException("shard file has been renamed: " + file);
+                }
+                
+                String shardHome = ArticleCodec.readString(in);
+                int shardTotal = in.readInt();
+                int from = in.readInt();
+                int to = in.readInt();
+                
+                if (!shardHome.equals(home)) {
+                    throw new IOException(file + " was crawled from " + shardHome + ", not " + home);
+                }
+                
+                if (total >= 0 && shardTotal != total || from != pages.size() || to < from) {
+                    throw new IOException(file + " does not follow on from the shards before it "
+                                          + "(were they crawled from different versions of the home page?)");
+                }
+                
+                total = shardTotal;
+                HashMap<Integer, String> shardTitles = new HashMap<>();
+                
+                for (int i = in.readInt(); i > 0; i--) {
+                    shardTitles.put(in.readInt(), ArticleCodec.readString(in));
+                }
+                
+                if (volTitles != null && !volTitles.equals(shardTitles)) {
+                    throw new IOException(file + " lists different volumes from the shards before it");
+                }
+                
+                volTitles = shardTitles;
+                
+                for (int i = in.readInt(); i > 0; i--) {
+                    String url = ArticleCodec.readString(in);
+                    String hash = ArticleCodec.readString(in);
+                    int article = articles.add(ArticleCodec.read(in), in.readInt());
+                    pages.add(new Fetcher.Page<>(url, article, hash));
+                }
+                
+                int expected = (int) crc.getValue();
+                
+                if (pages.size() != to || in.readInt() != expected || in.read() != -1) {
+                    throw new IOException("shard file is damaged: " + file);
+                }
+            }
+            catch (EOFException e) {
+                throw new IOException("shard file is cut short: " + file, e);
+            }
+        }
+        
+        if (pages.size() != total) {
+            throw new IOException("shards in " + dir + " end at page " + pages.size() + " of " + total);
+        }
+        
+        return new Merged(volTitles, articles, pages);
+    }
+    
+    /* 
+     * delete every shard file in dir (once they are merged), & dir itself if nothing else is left in it
+     * takes in: Path dir
+     */
+    public static void deleteAll(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (FILE_NAME.matcher(file.getFileName().toString()).matches()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        
+        try (DirectoryStream<Path> rest = Files.newDirectoryStream(dir)) {
+            if (!rest.iterator().hasNext()) {
+                Files.delete(dir);
+            }
+        }
+    }
+    
+    /* 
+     * the shard files in dir, by shard index; all of one shard count & none missing
+     * takes in: Path dir
+     * returns: TreeMap<index, Path>
+     */
+    private static TreeMap<Integer, Path> shardFiles(Path dir) throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        TreeSet<Integer> counts = new TreeSet<>();
+        
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    Matcher matcher = FILE_NAME.matcher(entry.getFileName().toString());
+                    
+                    if (matcher.matches()) {
+                        files.put(Integer.parseInt(matcher.group(1)), entry);
+                        counts.add(Integer.parseInt(matcher.group(2)));
+                    }
+                }
+            }
+        }
+        
+        if (files.isEmpty()) {
+            throw new FileNotFoundException("no shard files in " + dir);
+        }
+        
+        if (counts.size() > 1) {
+            throw new IOException("shard files in " + dir + " are from runs of " + counts
+                                  + " shards; remove the stale ones");
+        }
+        
+        int count = counts.first();
+        
+        for (int i = 1; i <= count; i++) {
+            if (!files.containsKey(i)) {
+                throw new FileNotFoundException("shard " + i + "/" + count + " is missing from " + dir);
+            }
+        }
+        
+        return files;
+    }
+    
+    // a merged sharded crawl: the home page's volume titles & every abstract page, in home page order
+    public record Merged(HashMap<Integer, String> volTitles, ArticleStore articles,
+                         ArrayList<Fetcher.Page<Integer>> pages) {}
+}
@@ -0,0 +1,356 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class Snapshot {
+    private static final byte[] MAGIC = "TACSNAP2".getBytes(StandardCharsets.US_ASCII);
+    private static final int TRAILER = Long.BYTES + MAGIC.length;
+    
+    private final MappedByteBuffer data;
+    private final HashMap<String, Record> index;
+    
+    /* 
+     * Constructor for Snapshot class
+     * a snapshot is one file holding every response of a crawl (home page, abstract pages, pdf HEADs):
+     *    "TACSNAP2"
+     *    records: each GET body (decompressed as served) deflate-compressed on its own (HEADs have no record)
+     *    index: int count, then per response: method, url, content type ("" if none; writeUTF),
+     *           long offset, int stored length, int raw length (-1 for a HEAD), int content length
+     *    trailer: long offset of the index, "TACSNAP2"
+     * the file is memory-mapped & only the index is read up front; a body is inflated when it is looked up
+     * takes in: MappedByteBuffer data, HashMap<"method url", Record> index
+     */
+    private Snapshot(MappedByteBuffer data, HashMap<String, Record> index) {
+        this.data = data;
+        this.index = index;
+    }
+    
+    /* 
+     * map the snapshot at path & read its index
+     * takes in: Path path
+     * returns: Snapshot
+     */
+    public static Snapshot open(Path path) throws IOException {
+        MappedByteBuffer data;
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot too large to map: " + path);
+            }
+            
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        int size = data.capacity();
+        
+        if (size < MAGIC.length + Integer.BYTES + TRAILER
+                || !hasMagic(data, 0) || !hasMagic(data, size - MAGIC.length)) {
+            throw new IOException("not a snapshot (or one from an older version): " + path);
+        }
+        
+        long indexOffset = data.getLong(size - TRAILER);
+        
+        if (indexOffset < MAGIC.length || indexOffset > size - TRAILER) {
+            throw new IOException("corrupt snapshot index offset in " + path);
+        }
+        
+        byte[] indexBytes = new byte[size - TRAILER - (int) indexOffset];
+        data.get((int) indexOffset, indexBytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(indexBytes));
+        int count = in.readInt();
+        HashMap<String, Record> index = new HashMap<>(count * 2);
+        
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF() + " " + in.readUTF();
+            String contentType = in.readUTF();
+            Record record = new Record(contentType.isEmpty() ? null : contentType,
+                                       in.readLong(), in.readInt(), in.readInt(), in.readInt());
+            
+            if (record.rawLength() >= 0 && record.offset() + record.storedLength() > indexOffset) {
+                throw new IOException("corrupt snapshot record for " + key + " in " + path);
+            }
+            
+            index.put(key, record);
+        }
+        
+        return new Snapshot(data, index);
+    }
+    
+    // number of responses in the snapshot
+    public int size() {
+        return this.index.size();
+    }
+    
+    /* 
+     * the stored response for method + url; only this response's record is inflated
+     * safe to call from several threads at once
+     * takes in: String method ("GET" or "HEAD"), String url
+     * returns: HttpCache.Entry (no validators; body is null for a HEAD), or null if the crawl never made that request
+     */
+    public HttpCache.Entry lookup(String method, String url) throws IOException {
+        Record record = this.index.get(method + " " + url);
+        
+        if (record == null) {
+            return null;
+        }
+        
+        if (record.rawLength() < 0) {
+            return new HttpCache.Entry(null, null, null, record.contentLength(), null);
+        }
+        
+        Inflater inflater = new Inflater();
+        
+        try {
+            inflater.setInput(this.data.slice((int) record.offset(), record.storedLength()));
+            byte[] body = new byte[record.rawLength()];
+            int n = 0;
+            
+            while (n < body.length && !inflater.finished()) {
+                int read = inflater.inflate(body, n, body.length - n);
+                
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                
+                n += read;
+            }
+            
+            if (n != body.length) {
+                throw new IOException("truncated snapshot record for " + method + " " + url);
+            }
+            
+            return new HttpCache.Entry(null, null, record.contentType(), record.contentLength(), body);
+        }
+        catch (DataFormatException e) {
+            throw new IOException("corrupt snapshot record for " + method + " " + url, e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+    
+    // start writing a new snapshot to path; nothing appears at path until the Recorder is closed
+    public static Recorder record(Path path) throws IOException {
+        return new Recorder(path);
+    }
+    
+    // true if the 8 bytes of data at offset spell MAGIC
+    private static boolean hasMagic(ByteBuffer data, int offset) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(offset + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /* 
+     * collects responses into a snapshot file as they are fetched
+     * bodies are compressed & appended to a temp file straight away; the index is kept in memory
+     * & written by close(), which then renames the temp file to path, so a crashed crawl never leaves a half snapshot
+     * a request added twice keeps the last response
+     */
+    public static class Recorder implements Closeable {
+        private final Path path;
+        private final Path tmp;
+        private final DataOutputStream out;
+        private final LinkedHashMap<String, String[]> requests = new LinkedHashMap<>();
+        private final HashMap<String, Record> records = new HashMap<>();
+        private long offset;
+        private boolean closed = false;
+        
+        /* 
+         * Constructor for Recorder class
+         * create the temp file next to path & write the leading magic
+         * takes in: Path path
+         */
+        private Recorder(Path path) throws IOException {
+            this.path = path.toAbsolutePath();
+            Files.createDirectories(this.path.getParent());
+            this.tmp = Files.createTempFile(this.path.getParent(), this.path.getFileName().toString(), ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.tmp)));
+            this.out.write(MAGIC);
+            this.offset = MAGIC.length;
+        }
+        
+        /* 
+         * add one response; the body is deflated outside the lock, then appended
+         * takes in: String method, String url, String contentType (may be null), int contentLength,
+         *           byte[] body (null for a HEAD)
+         */
+        public void add(String method, String url, String contentType, int contentLength,
+                        byte[] body) throws IOException {
+            byte[] stored = body == null ? null : deflate(body);
+            
+            synchronized (this) {
+                if (this.closed) {
+                    throw new IOException("snapshot already closed: " + this.path);
+                }
+                
+                String key = method + " " + url;
+                this.requests.put(key, new String[] { method, url });
+                
+                if (stored == null) {
+                    this.records.put(key, new Record(contentType, 0, 0, -1, contentLength));
+                    return;
+                }
+                
+                this.out.write(stored);
+                this.records.put(key, new Record(contentType, this.offset, stored.length, body.length, contentLength));
+                this.offset += stored.length;
+            }
+        }
+        
+        /* 
+         * write the index & trailer, then move the finished file to path (replacing any older snapshot)
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            
+            this.closed = true;
+            
+            try {
+                long indexOffset = this.offset;
+                this.out.writeInt(this.requests.size());
+                
+                for (Map.Entry<String, String[]> request : this.requests.entrySet()) {
+                    Record record = this.records.get(request.getKey());
+                    this.out.writeUTF(request.getValue()[0]);
+                    this.out.writeUTF(request.getValue()[1]);
+                    this.out.writeUTF(record.contentType() == null ? "" : record.contentType());
+                    this.out.writeLong(record.offset());
+                    this.out.writeInt(record.storedLength());
+                    this.out.writeInt(record.rawLength());
+                    this.out.writeInt(record.contentLength());
+                }
+                
+                this.out.writeLong(indexOffset);
+                this.out.write(MAGIC);
+                this.out.close();
+                Files.move(this.tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                this.out.close();
+                Files.deleteIfExists(this.tmp);
+            }
+        }
+        
+        // body compressed with a fresh Deflater, so every record can be inflated by itself
+        private static byte[] deflate(byte[] body) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            
+            try {
+                deflater.setInput(body);
+                deflater.finish();
+                ByteArrayOutputStream stored = new ByteArrayOutputStream(body.length / 3 + 64);
+                byte[] chunk = new byte[8192];
+                
+                while (!deflater.finished()) {
+                    stored.write(chunk, 0, deflater.deflate(chunk));
+                }
+                
+                return stored.toByteArray();
+            }
+            finally {
+                deflater.end();
+            }
+        }
+    }
+    
+    /* 
+     * Fetcher that answers every request from a snapshot instead of the network
+     * a request the crawl never made is an IOException, the same as a miss in offline cache mode
+     */
+    public static class ReplayFetcher extends Fetcher {
+        private final Snapshot snapshot;
+        
+        /* 
+         * Constructor for ReplayFetcher class
+         * nothing is sent to a host, so every worker can serve the same host at once, & no Transport is needed
+         * takes in: Snapshot snapshot, int threads
+         */
+        public ReplayFetcher(Snapshot snapshot, int threads) {
+            super(new RequestScheduler(threads, threads), null, null);
+            this.snapshot = snapshot;
+        }
+        
+        // stored GET response for url
+        @Override
+        public HttpCache.Entry getEntry(String url) throws IOException {
+            return replay("GET", url);
+        }
+        
+        // bodies come out of the snapshot whole, so pages are read from them
+        @Override
+        protected boolean buffersBodies() {
+            return true;
+        }
+        
+        // stored HEAD content length for url
+        @Override
+        public int head(String url) throws IOException {
+            return replay("HEAD", url).contentLength();
+        }
+        
+        // stored response, or an IOException naming the request that is missing
+        private HttpCache.Entry replay(String method, String url) throws IOException {
+            HttpCache.Entry entry = this.snapshot.lookup(method, url);
+            
+            if (entry == null) {
+                throw new IOException("not in snapshot: " + method + " " + url);
+            }
+            
+            return entry;
+        }
+    }
+    
+    /* 
+     * Fetcher that fetches as usual (cache & per-host cap included) & adds every successful response to a Recorder
+     */
+    public static class RecordingFetcher extends Fetcher {
+        private final Recorder recorder;
+        
+        /* 
+         * Constructor for RecordingFetcher class
+         * takes in: RequestScheduler scheduler, Transport transport, HttpCache cache (may be null), Recorder recorder
+         */
+        public RecordingFetcher(RequestScheduler scheduler, Transport transport, HttpCache cache, Recorder recorder) {
+            super(scheduler, transport, cache);
+            this.recorder = recorder;
+        }
+        
+        // GET url & record the body
+        @Override
+        public HttpCache.Entry getEntry(String url) throws IOException {
+            HttpCache.Entry response = super.getEntry(url);
+            this.recorder.add("GET", url, response.contentType(), response.body().length, response.body());
+            return response;
+        }
+        
+        // every body has to be kept whole to be recorded
+        @Override
+        protected boolean buffersBodies() {
+            return true;
+        }
+        
+        // HEAD url & record the content length
+        @Override
+        public int head(String url) throws IOException {
+            int length = super.head(url);
+            this.recorder.add("HEAD", url, null, length, null);
+            return length;
+        }
+    }
+    
+    // one response's content type & where it sits in the file: stored (compressed) & raw body length (-1 for a HEAD) & reported length
+    private record Record(String contentType, long offset, int storedLength, int rawLength, int contentLength) {}
+}
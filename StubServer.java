@@ -0,0 +1,166 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class StubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final int capacity;
+    private final long latencyMillis;
+    private final double failureRate;
+    private final int retryAfterSeconds;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger served = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    
+    /* 
+     * Constructor for StubServer class
+     * a local HTTP server on 127.0.0.1 (random free port) that behaves like an overloaded host:
+     *    GET /page/N answers "page N"; HEAD gives the same Content-Length
+     *    more than capacity requests at once are turned away with a 429 (with Retry-After if retryAfterSeconds > 0)
+     *    failureRate of the others get a 503
+     *    latency is latencyMillis, growing with the number of requests in flight (by 100% at capacity)
+     * used to try the Fetcher & RequestScheduler without touching tac.mta.ca
+     * takes in: int capacity, long latencyMillis, double failureRate, int retryAfterSeconds
+     */
+    public StubServer(int capacity, long latencyMillis, double failureRate, int retryAfterSeconds) throws IOException {
+        this.capacity = capacity;
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/page/", this::handle);
+        this.server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-server");
+            t.setDaemon(true);
+            return t;
+        }));
+        this.server.start();
+    }
+    
+    /* 
+     * main method for class
+     * fetch args[0] pages (default 300) from a stub with capacity args[1] (default 6), 20 ms latency, 2% 503s
+     * & a Retry-After of args[2] seconds on its 429s (default 1; 0 sends none),
+     * first with a fixed 16 requests per host & no retries, then with the adaptive RequestScheduler
+     * print for each: pages fetched, failures, time, 429s & 503s served, peak concurrency seen by the server,
+     * retries & the limit the scheduler settled on
+     */
+    public static void main(String[] args) throws IOException {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int retryAfter = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        
+        run("fixed", pages, capacity, retryAfter, new RequestScheduler(16, 16));
+        run("adaptive", pages, capacity, retryAfter, new RequestScheduler(16, 4, 16, 6, 50));
+    }
+    
+    // url of page n on this server
+    public String url(int n) {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/page/" + n;
+    }
+    
+    //
+    public int served() { return this.served.get(); }
+    public int throttled() { return this.throttled.get(); }
+    public int failed() { return this.failed.get(); }
+    public int peak() { return this.peak.get(); }
+    
+    // stop the server straight away
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+    
+    /* 
+     * fetch pages from a fresh stub through scheduler & print one result line
+     * takes in: String name, int pages, int capacity, int retryAfter, RequestScheduler scheduler
+     */
+    private static void run(String name, int pages, int capacity, int retryAfter,
+                            RequestScheduler scheduler) throws IOException {
+        try (StubServer stub = new StubServer(capacity, 20, 0.02, retryAfter)) {
+            Fetcher fetcher = new Fetcher(scheduler, null);
+            long retries = Metrics.counter("scheduler.retries");
+            long start = System.nanoTime();
+            ArrayList<CompletableFuture<String>> futures = new ArrayList<>(pages);
+            
+            for (int i = 0; i < pages; i++) {
+                futures.add(fetcher.getAsync(stub.url(i)));
+            }
+            
+            int ok = 0;
+            
+            for (int i = 0; i < pages; i++) {
+                try {
+                    if (futures.get(i).join().equals("page " + i)) {
+                        ok++;
+                    }
+                }
+                catch (CompletionException e) {
+                    // counted as missing below
+                }
+            }
+            
+            System.out.printf("%-9s %d/%d pages in %,6d ms | served %d, 429s %d, 503s %d, peak %d in flight"
+                              + " | %d retries, limit now %d%n",
+                              name, ok, pages, (System.nanoTime() - start) / 1_000_000,
+                              stub.served(), stub.throttled(), stub.failed(), stub.peak(),
+                              Metrics.counter("scheduler.retries") - retries, scheduler.limitOf(stub.url(0)));
+            fetcher.shutdown();
+        }
+    }
+    
+    /* 
+     * answer one request following the rules in the constructor
+     * takes in: HttpExchange exchange
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        int now = this.inFlight.incrementAndGet();
+        this.peak.accumulateAndGet(now, Math::max);
+        
+        try (exchange) {
+            if (now > this.capacity) {
+                this.throttled.incrementAndGet();
+                
+                if (this.retryAfterSeconds > 0) {
+                    exchange.getResponseHeaders().set("Retry-After", Integer.toString(this.retryAfterSeconds));
+                }
+                
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            
+            Thread.sleep(this.latencyMillis + this.latencyMillis * now / this.capacity);
+            
+            if (ThreadLocalRandom.current().nextDouble() < this.failureRate) {
+                this.failed.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = ("page " + path.substring(path.lastIndexOf('/') + 1)).getBytes(StandardCharsets.UTF_8);
+            this.served.incrementAndGet();
+            
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+                exchange.sendResponseHeaders(200, -1);
+            }
+            else {
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            this.inFlight.decrementAndGet();
+        }
+    }
+}
@@ -1,207 +1,302 @@
-import java.io.IOException;
-import java.net.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 public class TACMetadata {
     private static final String HOME = "http://www.tac.mta.ca/tac/";
-    private static final LinkedList<String> HTML_LINES = initHtmlLines();
-    private static final HashMap<Integer, String> VOL_TITLES = initVolTitles();
-    private static final LinkedList<String> ABSTRACT_SOURCES = initAbstractSources();
+    private static final Pattern JOB_NAME = Pattern.compile("[\\w-]+");
+    private static final String LOCAL_SCHEMA = "schema/native.xsd";
     
     /* 
      * main method for class
-     * initalize an array of Article objects articles
-     * loop though Array, at index, initalize a new Article object from ABSTRACT_SOURCES
-     * sort the articles array in ascending order; by volume then if in same volume by startPage.
-     * create a Journal object using buildJournal method and passing it the articles array & authorIDs by callling getAuthorIDs
-     * for each volume in the journal call toXml() to get XML data and save to file named according with the volume
+     * set up the recorder, fetcher & validator from the system properties (nothing touches the network before this),
+     * then run every journal job over them (see initJobs & runJobs)
+     * -Dtac.record=FILE saves the crawl as a snapshot once every job has finished with the network;
+     * -Dtac.snapshot=FILE replays such a snapshot instead of using the network
+     * -Dtac.shard=i/n only crawls shard i of n of each journal (JournalJob.runShard) & -Dtac.merge=true puts the
+     * n shards together & exports them (JournalJob.mergeShards), so a crawl can be spread over n processes
+     * stage timings, request latencies & byte counts are written to -Dtac.metrics (see writeMetrics)
+     * exits with status 1 if any volume failed
      */
     public static void main(String[] args) throws IOException {
-        int n = ABSTRACT_SOURCES.size();
-        Article[] articles = new Article[n];
+        Shard shard = initShard();
+        Snapshot.Recorder recorder = initRecorder();
+        Fetcher fetcher = initFetcher(recorder);
+        XmlValidator validator = initValidator();
+        boolean recording = recorder != null;
+        Task task;
         
-        for (int i = 0; i < n; i++) {
-            articles[i] = new Article(ABSTRACT_SOURCES.get(i));
+        if (Boolean.getBoolean("tac.merge")) {
+            task = job -> job.mergeShards(validator);
+        }
+        else if (shard != null) {
+            task = job -> job.runShard(fetcher, shard);
+        }
+        else {
+            task = job -> job.run(fetcher, recording, validator);
         }
         
-        Arrays.sort(articles, Comparator.comparing(Article::getVolume)
-                                        .thenComparing(Article::getStartPage));
+        boolean succeeded = runJobs(initJobs(recording), task);
         
-        Journal theoryAndAppsOfCats = buildJournal(articles, getAuthorIDs(articles));
+        if (recorder != null) {
+            recorder.close();
+        }
         
-        for (Volume volume : theoryAndAppsOfCats.getVolumes()) {
-            theoryAndAppsOfCats.toXml(volume).saveToFile(
-                String.format("metadata/TAC_vol%02d.xml", volume.getVolume()));
+        writeMetrics(shard);
+        
+        if (!succeeded) {
+            System.exit(1);
         }
     }
     
     /* 
-     * test for input/output errors & URI Syntax erros while 
-     * creating new connection to tac home page
-     * streaming HTML snippets into htmlLines linked list
-     * split into indv lines using regex, then as they are added remove any whitespaces
-     * and these new strings to the collection then disconnect
-     * return htmlLines
+     * the journals to crawl, from -Dtac.journals=NAME=URL,NAME=URL,... (URL is the journal's home page)
+     *    unset: one unnamed job for the TAC site (HOME), writing to metadata/ & checkpointing to the tac.checkpoint dir
+     *    set: one job per entry, writing to metadata/NAME/ & checkpointing to tac.checkpoint/NAME/
+     * -Dtac.checkpoint=DIR (default "checkpoint", empty turns it off): completed abstract fetches & pdf sizes are
+     * logged there as they finish (see Checkpoint); a restarted run only fetches what is missing from it
+     * & the checkpoint is deleted once a run succeeds; it is always off when recording or replaying a snapshot
+     * (the snapshot needs every request made / there is nothing to save)
+     * takes in: boolean recording
+     * returns: List of JournalJob, in the order given
      */
-    private static LinkedList<String> initHtmlLines() {
-        try {
-            HttpURLConnection con = (HttpURLConnection) new URI(HOME).toURL().openConnection();
+    private static List<JournalJob> initJobs(boolean recording) {
+        String checkpoint = System.getProperty("tac.checkpoint", "checkpoint");
+        boolean checkpointing = !checkpoint.isEmpty() && !recording && System.getProperty("tac.snapshot", "").isEmpty();
+        String journals = System.getProperty("tac.journals", "");
+        
+        if (journals.isBlank()) {
+            return List.of(new JournalJob("", HOME, Path.of("metadata"), checkpointing ? Path.of(checkpoint) : null));
+        }
+        
+        ArrayList<JournalJob> jobs = new ArrayList<>();
+        HashSet<String> names = new HashSet<>();
+        
+        for (String journal : journals.split(",")) {
+            int eq = journal.indexOf('=');
+            String name = eq < 0 ? "" : journal.substring(0, eq).strip();
+            String home = eq < 0 ? "" : journal.substring(eq + 1).strip();
             
-            LinkedList<String> htmlLines = Arrays.stream(new String(
-                con.getInputStream()
-                .readAllBytes())
-                .split("\n"))
-                .map(String::strip)
-                .collect(Collectors.toCollection(LinkedList::new));
+            if (!JOB_NAME.matcher(name).matches() || home.isEmpty() || !names.add(name)) {
+                throw new IllegalArgumentException("tac.journals entries are NAME=URL with distinct names "
+                                                   + "(letters, digits, _ -): " + journal);
+            }
             
-            con.disconnect();
-            return htmlLines;
-        }
-        catch (IOException | URISyntaxException e) {
-            throw new RuntimeException(e);
+            jobs.add(new JournalJob(name, home.endsWith("/") ? home : home + "/", Path.of("metadata", name),
+                                    checkpointing ? Path.of(checkpoint, name) : null));
         }
+        
+        return jobs;
     }
     
     /* 
-     * establishes the standard notation
-     * instantitate regex patterns for volume, article num & title
-     * extracts vol nums & titles from HTML lines and stores them in HashMap:
-     * find all occurrences of  volume pattern in current HTML line using volMatcher
-     * for each occurrence, extract volume number using numMatcher and convert to an integer
-     * then extract corresponding title using titleMatcher
-     * the volume number & title are added to the volTitles HashMap.
-     * returns: HashMap of volTitles
+     * the shard this process crawls, from -Dtac.shard=i/n (i from 1 to n; see Shard), or null to crawl everything
+     * a shard only saves its part of the crawl, so it can't be recorded or merged in the same process
+     * returns: Shard, or null
      */
-
-    private static HashMap<Integer, String> initVolTitles() {
-        HashMap<Integer, String> volTitles = new HashMap<>();
+    private static Shard initShard() {
+        String spec = System.getProperty("tac.shard", "");
+        boolean merge = Boolean.getBoolean("tac.merge");
         
-        Pattern volPattern = Pattern.compile("Vol[.] \\d+");
-        Pattern numPattern = Pattern.compile("\\d+");
-        Pattern titlePattern = Pattern.compile("[-]\\s[^<]+</a>");
+        if (!System.getProperty("tac.record", "").isEmpty() && (merge || !spec.isEmpty())) {
+            throw new IllegalStateException("tac.record can't be used with tac.shard or tac.merge");
+        }
         
-        Iterator<String> htmlIter = HTML_LINES.iterator();
-        String line = htmlIter.next();
+        if (spec.isEmpty()) {
+            return null;
+        }
         
-        while (!volPattern.matcher(line).find()) {
-            line = htmlIter.next();
+        if (merge) {
+            throw new IllegalStateException("tac.shard & tac.merge are separate runs: crawl every shard, then merge");
         }
         
-        Matcher volMatcher = volPattern.matcher(line);
+        return Shard.parse(spec);
+    }
+    
+    /* 
+     * run task for every job (all of them over the same shared fetcher & validator)
+     * a single job runs on this thread; several run at once, one thread each, so their requests are queued together
+     * & the shared worker pool stays busy across hosts instead of the journals being crawled one after another
+     * a job whose crawl fails is reported & the others carry on; once all are done the run fails with an IOException
+     * takes in: List<JournalJob> jobs, Task task
+     * returns: true if every job wrote every volume
+     */
+    private static boolean runJobs(List<JournalJob> jobs, Task task) throws IOException {
+        if (jobs.size() == 1) {
+            return task.run(jobs.get(0));
+        }
+        
+        ExecutorService pool = Executors.newFixedThreadPool(jobs.size(), r -> {
+            Thread t = new Thread(r, "journal");
+            t.setDaemon(true);
+            return t;
+        });
         
-        while (volMatcher.find()) {
-            Matcher numMatcher = numPattern.matcher(volMatcher.group());
-            numMatcher.find();
-            int volNum = Integer.parseInt(numMatcher.group());
+        try {
+            ArrayList<Future<Boolean>> results = new ArrayList<>(jobs.size());
             
-            Matcher titleMatcher = titlePattern.matcher(line);
-            titleMatcher.find();
-            String volTitle = titleMatcher.group()
-                .substring(2, titleMatcher.group().length() - 4);
+            for (JournalJob job : jobs) {
+                results.add(pool.submit(() -> task.run(job)));
+            }
             
-            volTitles.put(volNum, volTitle);
-            line = htmlIter.next();
-            volMatcher = volPattern.matcher(line);
+            boolean succeeded = true;
+            int crashed = 0;
+            
+            for (int i = 0; i < jobs.size(); i++) {
+                try {
+                    succeeded &= results.get(i).get();
+                }
+                catch (ExecutionException e) {
+                    System.err.printf("%s: crawl of %s failed: %s%n", jobs.get(i).getName(), jobs.get(i).getHome(),
+                                      e.getCause());
+                    crashed++;
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for " + jobs.get(i).getName());
+                }
+            }
+            
+            if (crashed > 0) {
+                throw new IOException(crashed + " of " + jobs.size() + " journals failed");
+            }
+            
+            return succeeded;
+        }
+        finally {
+            pool.shutdown();
         }
-        
-        return volTitles;
     }
     
     /* 
-     * iterate through lines of HTML_LINES; if lines contain substring then split + add to pages HashSet
-     * iterate over page obj of pages HashSet; HttpURLConnection to connect to a URL constructed from HOME string & current page
-     * reads the bytes from the connection's input stream and add the resulting string of the InputStream & bytes of said page to abstractSources
-     * throw an err if input/output exception or URISyntax exception
-     * returns: abstractSources LinkedList of Strings of sources (ahref links)
+     * write the run's Metrics summary (JSON) to -Dtac.metrics (default metrics.json, or metrics-shard-i-of-n.json
+     * for a shard so shard processes sharing a directory don't overwrite each other; an empty value turns it off)
+     * a summary that can't be written is reported but doesn't fail the run
+     * takes in: Shard shard (null if this process isn't crawling one)
      */
-
-    private static LinkedList<String> initAbstractSources() {
-        HashSet<String> pages = new HashSet<>();
-        LinkedList<String> abstractSources = new LinkedList<>();
-        
-        for (String line : HTML_LINES) {
-            if (line.contains("abs.html")) {
-                pages.add(line.split("\"")[1]);
-                
-            }
+    private static void writeMetrics(Shard shard) {
+        String path = System.getProperty("tac.metrics", shard == null ? "metrics.json"
+                                                                      : "metrics-" + shard.getName() + ".json");
+        
+        if (path.isEmpty()) {
+            return;
+        }
+        
+        try {
+            Metrics.writeSummary(Path.of(path));
+        }
+        catch (IOException e) {
+            System.err.printf("could not write metrics to %s: %s%n", path, e);
         }
+    }
+    
+    /* 
+     * Fetcher for the whole run, chosen by system properties:
+     *    -Dtac.snapshot=FILE: every response comes from that snapshot (see Snapshot), no network or cache
+     *    otherwise a Fetcher with -Dtac.threads workers (default 16) & the response cache from initCache();
+     *    each host starts at -Dtac.perHost concurrent requests (default 4) & the RequestScheduler adapts that
+     *    between 1 & -Dtac.perHostMax (default 16), retrying throttled or failed requests up to -Dtac.retries
+     *    times (default 4) with backoff starting at -Dtac.backoffMillis (default 500)
+     *    every request goes over one pooled, keep-alive Transport (HTTP/2 where the server offers it) with a
+     *    -Dtac.connectTimeoutMillis connect timeout (default 10000) & -Dtac.timeoutMillis per response (default 30000)
+     *    with -Dtac.record=FILE it also records into recorder
+     * takes in: Snapshot.Recorder recorder (null if the crawl is not being recorded)
+     * returns: Fetcher
+     */
+    private static Fetcher initFetcher(Snapshot.Recorder recorder) {
+        int threads = Integer.getInteger("tac.threads", 16);
+        String snapshot = System.getProperty("tac.snapshot", "");
         
-        for (String page : pages) {
+        if (!snapshot.isEmpty()) {
+            if (recorder != null) {
+                throw new IllegalStateException("tac.snapshot & tac.record can't be used together");
+            }
+            
             try {
-                HttpURLConnection con = (HttpURLConnection) new URI(HOME + page).toURL()
-                    .openConnection();
-                abstractSources.add(new String(con.getInputStream().readAllBytes()));
-                con.disconnect();
+                return new Snapshot.ReplayFetcher(Snapshot.open(Path.of(snapshot)), threads);
             }
-            catch (IOException | URISyntaxException e) {
-                throw new RuntimeException(e);
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
         
-        return abstractSources;
+        int perHost = Integer.getInteger("tac.perHost", 4);
+        RequestScheduler scheduler = new RequestScheduler(threads, perHost,
+                                                          Math.max(perHost, Integer.getInteger("tac.perHostMax", 16)),
+                                                          Integer.getInteger("tac.retries", 4),
+                                                          Long.getLong("tac.backoffMillis", 500));
+        
+        Transport transport = new Transport(Duration.ofMillis(Long.getLong("tac.connectTimeoutMillis", 10_000)),
+                                            Duration.ofMillis(Long.getLong("tac.timeoutMillis", 30_000)));
+        
+        if (recorder != null) {
+            return new Snapshot.RecordingFetcher(scheduler, transport, initCache(), recorder);
+        }
+        
+        return new Fetcher(scheduler, transport, initCache());
+    }
+    
+    // snapshot recorder for -Dtac.record=FILE, or null if the crawl is not being recorded
+    private static Snapshot.Recorder initRecorder() {
+        String path = System.getProperty("tac.record", "");
+        
+        if (path.isEmpty()) {
+            return null;
+        }
+        
+        try {
+            return Snapshot.record(Path.of(path));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
     
     /* 
-     * generates a HashMap of Authors from the articles provided and generates an id value for them
-     * params: takes in article object from Article array 
-     * (might be helpful to switch the naming structure around, i.e. Articles[] article
-     * returns: authorID HashMap (Author, Author ID Number)
+     * on-disk response cache shared by every fetch (home page, abstract pages, pdf HEADs)
+     * directory comes from -Dtac.cache (default "cache"); an empty value turns caching off
+     * -Dtac.offline=true serves everything from the cache & never touches the network
+     * returns: HttpCache, or null if caching is off
      */
-
-    private static HashMap<String, Integer> getAuthorIDs(Article[] articles) {
-        HashMap<String, Integer> authorIDs = new HashMap<>();
-        int id = 1;
-        
-        for (Article article : articles) {
-            for (String author : article.getAuthors()) {
-                if (!authorIDs.containsKey(author)) {
-                    authorIDs.put(author, id++);
-                }
+    private static HttpCache initCache() {
+        String dir = System.getProperty("tac.cache", "cache");
+        boolean offline = Boolean.getBoolean("tac.offline");
+        
+        if (dir.isEmpty()) {
+            if (offline) {
+                throw new IllegalStateException("tac.offline needs a tac.cache directory");
             }
+            
+            return null;
         }
         
-        return authorIDs;
+        return new HttpCache(Path.of(dir), offline);
     }
     
     /* 
-     * loop through VOL_TITLES (num & volume title obj)
-     * get the corresponding article data from articles stream & add html snippets to volumeArticles ArrayList
-     * update volumes (array of article obj) with volume objects that comprise of Article[] objects from volumeArticles,
-     * that volume's title from VOL_TITLES, and a fileID num generate from the count
-     * takes in: article array & HashMap of authorIDs
-     * returns a new journal object of volumes & authorIDs
+     * schema every volume is validated against as it is written (see XmlValidator)
+     * comes from -Dtac.schema (default "schema/native.xsd"); an empty value turns validation off
+     * the default is a local approximation of the OJS native schema, and messages say so
+     * returns: XmlValidator, or null if validation is off
      */
-    private static Journal buildJournal(Article[] articles,
-                                        HashMap<String, Integer> authorIDs) {
-        int k = VOL_TITLES.size();
-        Volume[] volumes = new Volume[k];
-        Iterator<Article> articleIter = Arrays.stream(articles).iterator();
-        Article article = articleIter.next();
-        int fileIDFirst = 1;
-        
-        for (int i = 0; i < k; i++) {
-            ArrayList<Article> volumeArticles = new ArrayList<>();
-            int ct = 0;
-            
-            while (article.getVolume() == i + 1) {
-                volumeArticles.add(article);
-                ct++;
-                
-                if (articleIter.hasNext()) {
-                    article = articleIter.next();
-                }
-                else {
-                    break;
-                }
-            }
-            
-            volumes[i] = new Volume(volumeArticles.toArray(Article[]::new),
-                                    VOL_TITLES, fileIDFirst);
-            fileIDFirst += ct;
+    private static XmlValidator initValidator() throws IOException {
+        String schema = System.getProperty("tac.schema", LOCAL_SCHEMA);
+        
+        if (schema.isEmpty()) {
+            return null;
         }
         
-        return new Journal(volumes, authorIDs);
+        String description = schema.equals(LOCAL_SCHEMA)
+            ? schema + " (a local approximation of the OJS 3.3 native schema, not the upstream one)"
+            : schema;
+        return XmlValidator.load(Path.of(schema), description);
+    }
+    
+    // what main does with each journal job: crawl & export it, crawl one shard of it, or merge its shards
+    private interface Task {
+        boolean run(JournalJob job) throws IOException;
     }
-}
\ No newline at end of file
+}
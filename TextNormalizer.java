@@ -0,0 +1,331 @@
+import java.util.*;
+
+public class TextNormalizer {
+    
+    // static helpers only
+    private TextNormalizer() {}
+    
+    /* 
+     * remove every char found in chars from the beginning and end of s
+     * same result as the old regex loop (s.matches("[chars].*") / s.matches(".*[chars]")),
+     * which never stripped anything from a string containing a line terminator, since "." can't match one
+     * takes in: String s & String chars
+     * returns: s itself if nothing is stripped, otherwise a substring of it
+     */
+    public static String stripChars(String s, String chars) {
+        int start = 0;
+        int end = s.length();
+        
+        while (start < end && chars.indexOf(s.charAt(start)) >= 0) {
+            start++;
+        }
+        
+        while (end > start && chars.indexOf(s.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        
+        if ((start == 0 && end == s.length()) || hasLineTerminator(s)) {
+            return s;
+        }
+        
+        return s.substring(start, end);
+    }
+    
+    /* 
+     * replace every run of whitespace (regex \s: space, \t, \n, \x0B, \f, \r) with a single " "
+     * same as s.replaceAll("\\s+", " ")
+     * takes in: String s
+     * returns: s itself if already collapsed, otherwise a new String
+     */
+    public static String collapseWhitespace(String s) {
+        return collapse(s, false);
+    }
+    
+    /* 
+     * replace every whitespace run, "<p>" and "</p>" with a single " " each (in one scan, left to right)
+     * same as s.replaceAll("\\s+|<p>|</p>", " "); note "a <p> b" becomes "a   b", as it always has
+     * takes in: String s
+     * returns: s itself if there is nothing to replace, otherwise a new String
+     */
+    public static String collapseWhitespaceAndParagraphs(String s) {
+        return collapse(s, true);
+    }
+    
+    /* 
+     * replace every "<p>" and "</p>" with " "
+     * same as s.replaceAll("<p>|</p>", " ")
+     * takes in: String s
+     * returns: new String (or s if there are no paragraph tags)
+     */
+    public static String paragraphsToSpaces(String s) {
+        return replaceTokens(s, " ", "<p>", "</p>");
+    }
+    
+    /* 
+     * remove every occurrence of the given tokens, scanning left to right (first listed token wins at a position)
+     * same as s.replaceAll("tok1|tok2|...", "") for plain tokens
+     * takes in: String s, String... tokens
+     * returns: new String (or s if no token occurs)
+     */
+    public static String removeTokens(String s, String... tokens) {
+        return replaceTokens(s, "", tokens);
+    }
+    
+    /* 
+     * pull whitespace off either side of a <br> tag: " <br> ", " <br>" and "<br> " all become "<br>"
+     * (one whitespace char per side, as with s.replaceAll("\\s<br>\\s|\\s<br>|<br>\\s", "<br>"))
+     * takes in: String s
+     * returns: new String (or s if there is no <br>)
+     */
+    public static String tightenBreaks(String s) {
+        if (!s.contains("<br>")) {
+            return s;
+        }
+        
+        int n = s.length();
+        StringBuilder sb = new StringBuilder(n);
+        int i = 0;
+        
+        while (i < n) {
+            char c = s.charAt(i);
+            
+            if (isSpace(c) && s.startsWith("<br>", i + 1)) {
+                sb.append("<br>");
+                i += (i + 5 < n && isSpace(s.charAt(i + 5))) ? 6 : 5;
+            }
+            else if (c == '<' && s.startsWith("<br>", i) && i + 4 < n && isSpace(s.charAt(i + 4))) {
+                sb.append("<br>");
+                i += 5;
+            }
+            else {
+                sb.append(c);
+                i++;
+            }
+        }
+        
+        return sb.toString();
+    }
+    
+    /* 
+     * join hyphens to their neighbours: " - ", "- " and " -" all become "-"
+     * (single spaces only, as with s.replaceAll(" [-] |[-] | [-]", "-") on collapsed text)
+     * takes in: String s
+     * returns: new String (or s if there is no hyphen)
+     */
+    public static String joinHyphens(String s) {
+        if (s.indexOf('-') < 0) {
+            return s;
+        }
+        
+        int n = s.length();
+        StringBuilder sb = new StringBuilder(n);
+        int i = 0;
+        
+        while (i < n) {
+            char c = s.charAt(i);
+            boolean spaceHyphen = c == ' ' && i + 1 < n && s.charAt(i + 1) == '-';
+            
+            if (spaceHyphen && i + 2 < n && s.charAt(i + 2) == ' ') {
+                sb.append('-');
+                i += 3;
+            }
+            else if (c == '-' && i + 1 < n && s.charAt(i + 1) == ' ') {
+                sb.append('-');
+                i += 2;
+            }
+            else if (spaceHyphen) {
+                sb.append('-');
+                i += 2;
+            }
+            else {
+                sb.append(c);
+                i++;
+            }
+        }
+        
+        return sb.toString();
+    }
+    
+    /* 
+     * put a space after a "." that sits between two letters, e.g. "J.R. Smith" -> "J. R. Smith"
+     * the letters after the "." are used up by the match (as with s.replaceAll("([A-Za-z])[.]([A-Za-z]+)", "$1. $2")),
+     * so "A.B.C" gives "A. B.C"
+     * takes in: String s
+     * returns: new String (or s if nothing changes)
+     */
+    public static String spaceAfterInitials(String s) {
+        int n = s.length();
+        StringBuilder sb = null;
+        int i = 0;
+        
+        while (i < n) {
+            char c = s.charAt(i);
+            
+            if (isAsciiLetter(c) && i + 2 < n && s.charAt(i + 1) == '.' && isAsciiLetter(s.charAt(i + 2))) {
+                if (sb == null) {
+                    sb = new StringBuilder(n + 8).append(s, 0, i);
+                }
+                
+                sb.append(c).append(". ");
+                i += 2;
+                
+                while (i < n && isAsciiLetter(s.charAt(i))) {
+                    sb.append(s.charAt(i++));
+                }
+            }
+            else {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                
+                i++;
+            }
+        }
+        
+        return sb == null ? s : sb.toString();
+    }
+    
+    /* 
+     * split s at every char found in delims
+     * same pieces as s.split("[delims]"): empty pieces are kept except at the very end
+     * takes in: String s, String delims
+     * returns: String[] pieces
+     */
+    public static String[] split(String s, String delims) {
+        ArrayList<String> pieces = new ArrayList<>();
+        int start = 0;
+        
+        for (int i = 0; i < s.length(); i++) {
+            if (delims.indexOf(s.charAt(i)) >= 0) {
+                pieces.add(s.substring(start, i));
+                start = i + 1;
+            }
+        }
+        
+        pieces.add(s.substring(start));
+        int size = pieces.size();
+        
+        while (size > 0 && pieces.get(size - 1).isEmpty()) {
+            size--;
+        }
+        
+        if (size == 0 && s.isEmpty()) {
+            return new String[] { s };
+        }
+        
+        return pieces.subList(0, size).toArray(String[]::new);
+    }
+    
+    /* 
+     * shared scan for collapseWhitespace & collapseWhitespaceAndParagraphs
+     * each whitespace run (and, if paragraphs, each <p> / </p>) becomes one " "
+     * nothing is allocated until the first run that isn't already a lone " "
+     * takes in: String s, boolean paragraphs
+     * returns: s or the collapsed copy
+     */
+    private static String collapse(String s, boolean paragraphs) {
+        int n = s.length();
+        StringBuilder sb = null;
+        int i = 0;
+        
+        while (i < n) {
+            int end = i;
+            
+            if (isSpace(s.charAt(i))) {
+                while (end < n && isSpace(s.charAt(end))) {
+                    end++;
+                }
+            }
+            else if (paragraphs && s.startsWith("<p>", i)) {
+                end = i + 3;
+            }
+            else if (paragraphs && s.startsWith("</p>", i)) {
+                end = i + 4;
+            }
+            
+            if (end == i) {
+                if (sb != null) {
+                    sb.append(s.charAt(i));
+                }
+                
+                i++;
+                continue;
+            }
+            
+            if (sb == null && !(end == i + 1 && s.charAt(i) == ' ')) {
+                sb = new StringBuilder(n).append(s, 0, i);
+            }
+            
+            if (sb != null) {
+                sb.append(' ');
+            }
+            
+            i = end;
+        }
+        
+        return sb == null ? s : sb.toString();
+    }
+    
+    /* 
+     * replace every occurrence of the tokens in s with replacement, in one left to right scan
+     * takes in: String s, String replacement, String... tokens
+     * returns: new String (or s if no token occurs)
+     */
+    private static String replaceTokens(String s, String replacement, String... tokens) {
+        int n = s.length();
+        StringBuilder sb = null;
+        int i = 0;
+        
+        while (i < n) {
+            String match = null;
+            
+            for (String token : tokens) {
+                if (s.charAt(i) == token.charAt(0) && s.startsWith(token, i)) {
+                    match = token;
+                    break;
+                }
+            }
+            
+            if (match == null) {
+                if (sb != null) {
+                    sb.append(s.charAt(i));
+                }
+                
+                i++;
+            }
+            else {
+                if (sb == null) {
+                    sb = new StringBuilder(n).append(s, 0, i);
+                }
+                
+                sb.append(replacement);
+                i += match.length();
+            }
+        }
+        
+        return sb == null ? s : sb.toString();
+    }
+    
+    // regex \s: [ \t\n\x0B\f\r]
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    // regex [A-Za-z]
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+    
+    // chars the regex "." refuses to match
+    private static boolean hasLineTerminator(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+}
@@ -0,0 +1,189 @@
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.*;
+
+public class Tokenizer {
+    private static final Pattern NAMED_ENTITY = Pattern.compile("&([A-Za-z])([a-z]*);");
+    private static final Pattern NUMERIC_ENTITY = Pattern.compile("&#(\\d+);");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Set<String> MARKUP_ENTITIES = Set.of("amp", "lt", "gt", "quot", "apos", "nbsp");
+    // accents (\'e, \"o, \^o, \v{c}, \c{c}, ...): dropped, the letter they sit on stays part of the word
+    private static final String ACCENT_SYMBOLS = "'\"^`~=.";
+    private static final Set<String> ACCENT_COMMANDS = Set.of("v", "c", "H", "u", "d", "b", "k", "r", "t");
+    // letters written as commands (\o, \ss, \ae, ...): spelled out inside the word
+    private static final Map<String, String> LETTER_COMMANDS = Map.ofEntries(
+        Map.entry("o", "o"), Map.entry("O", "o"), Map.entry("ss", "ss"), Map.entry("ae", "ae"), Map.entry("AE", "ae"),
+        Map.entry("oe", "oe"), Map.entry("OE", "oe"), Map.entry("aa", "a"), Map.entry("AA", "a"), Map.entry("l", "l"),
+        Map.entry("L", "l"), Map.entry("i", "i"), Map.entry("j", "j"));
+    // font, size & decoration commands: dropped, their argument is indexed as plain text
+    private static final Set<String> FORMAT_COMMANDS = Set.of(
+        "cal", "mathcal", "mathbb", "mathbf", "mathrm", "mathsf", "mathit", "mathtt", "mathfrak", "frak", "mathscr",
+        "scr", "bf", "it", "rm", "sf", "tt", "em", "sl", "sc", "emph", "textbf", "textit", "textrm", "textsf",
+        "texttt", "textsc", "text", "mbox", "hbox", "operatorname", "boldsymbol", "bm", "displaystyle", "textstyle",
+        "scriptstyle", "left", "right", "big", "Big", "bigl", "bigr", "Bigl", "Bigr", "hat", "widehat", "tilde",
+        "widetilde", "bar", "overline", "underline", "vec", "dot", "ddot", "check", "breve", "acute", "grave");
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "into", "is", "it", "its", "of", "on",
+        "or", "that", "the", "their", "these", "this", "to", "we", "which", "with");
+    
+    // static helpers only
+    private Tokenizer() {}
+    
+    /* 
+     * every search token of text, in order (repeats included), passed to out
+     *    markup: HTML tags are word breaks & entities become their letter (&eacute; -> e, &amp; -> break)
+     *    LaTeX: accents are dropped from the letter they sit on (G\"{o}del -> godel), letter commands are spelled
+     *    out (Erd\H{o}s, \o -> o), braces don't break words, font & decoration commands are dropped
+     *    (\mathcal{C} -> c), any other command is a token of its own named after it (\infty -> infty, \to -> to);
+     *    $ ^ _ & everything else that isn't a letter or digit breaks words
+     *    Unicode: accents are dropped (Ad&aacute;mek & its Unicode form -> adamek), everything is lower case
+     *    single letters are dropped, & "'s" after a word
+     * with text true (titles, keywords, abstracts, not names) stop words are dropped & plurals reduced to their
+     * singular by the S-stemmer (categories -> category, monoids -> monoid)
+     * the same function tokenizes queries, so a query for \infty, infty or $\infty$ finds the same articles
+     * takes in: String s, boolean text, Consumer<String> out
+     */
+    public static void tokenize(String s, boolean text, Consumer<String> out) {
+        String clean = decode(s);
+        StringBuilder word = new StringBuilder();
+        int n = clean.length();
+        int i = 0;
+        
+        while (i < n) {
+            char c = clean.charAt(i);
+            
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                i++;
+            }
+            else if (c == '{' || c == '}') {
+                i++;
+            }
+            else if (c == '\\' && i + 1 < n && ACCENT_SYMBOLS.indexOf(clean.charAt(i + 1)) >= 0) {
+                i += 2;
+            }
+            else if (c == '\\' && i + 1 < n && isAsciiLetter(clean.charAt(i + 1))) {
+                int end = i + 1;
+                
+                while (end < n && isAsciiLetter(clean.charAt(end))) {
+                    end++;
+                }
+                
+                String command = clean.substring(i + 1, end);
+                i = end;
+                
+                if (ACCENT_COMMANDS.contains(command)) {
+                    continue;
+                }
+                
+                String letters = LETTER_COMMANDS.get(command);
+                
+                if (letters != null) {
+                    word.append(letters);
+                    continue;
+                }
+                
+                emit(word, text, out);
+                
+                if (!FORMAT_COMMANDS.contains(command)) {
+                    word.append(command.toLowerCase(Locale.ROOT));
+                    // a command's name is not English: no stemming, not a stop word ("\to" is "to")
+                    emit(word, false, out);
+                }
+            }
+            else if ((c == '\'' || c == '\u2019') && i + 1 < n && clean.charAt(i + 1) == 's'
+                     && (i + 2 == n || !Character.isLetterOrDigit(clean.charAt(i + 2)))) {
+                emit(word, text, out);
+                i += 2;
+            }
+            else {
+                emit(word, text, out);
+                i++;
+            }
+        }
+        
+        emit(word, text, out);
+    }
+    
+    /* 
+     * the distinct tokens of s (see tokenize), in the order they first appear
+     * takes in: String s, boolean text
+     * returns: List of token
+     */
+    public static List<String> tokens(String s, boolean text) {
+        LinkedHashSet<String> tokens = new LinkedHashSet<>();
+        tokenize(s, text, tokens::add);
+        return new ArrayList<>(tokens);
+    }
+    
+    /* 
+     * S-stemmer (Harman): the plural endings -ies, -es & -s reduced; words ending in -us, -ss or -is keep their s
+     * (focus, class, analysis), as do words of 3 letters or less
+     * takes in: String word (lower case)
+     * returns: String stem
+     */
+    static String stem(String word) {
+        int n = word.length();
+        
+        if (n > 4 && word.endsWith("ies") && !word.endsWith("eies") && !word.endsWith("aies")) {
+            return word.substring(0, n - 3) + "y";
+        }
+        
+        if (n > 3 && word.endsWith("es") && !word.endsWith("aes") && !word.endsWith("ees") && !word.endsWith("oes")) {
+            return word.substring(0, n - 1);
+        }
+        
+        if (n > 3 && word.endsWith("s") && !word.endsWith("us") && !word.endsWith("ss") && !word.endsWith("is")) {
+            return word.substring(0, n - 1);
+        }
+        
+        return word;
+    }
+    
+    // pass word on (stop words & single letters aside, stemmed if text) & empty it
+    private static void emit(StringBuilder word, boolean text, Consumer<String> out) {
+        if (word.length() > 1) {
+            String token = word.toString();
+            
+            if (!text) {
+                out.accept(token);
+            }
+            else if (!STOP_WORDS.contains(token)) {
+                out.accept(stem(token));
+            }
+        }
+        
+        word.setLength(0);
+    }
+    
+    /* 
+     * s with its markup undone: tags become spaces, entities their letter (markup entities a space)
+     * & accented letters their base letter
+     * takes in: String s
+     * returns: s itself if there is nothing to undo, otherwise a new String
+     */
+    private static String decode(String s) {
+        if (s.indexOf('<') >= 0) {
+            s = s.replaceAll("<[^>]*>", " ");
+        }
+        
+        if (s.indexOf('&') >= 0) {
+            s = NUMERIC_ENTITY.matcher(s).replaceAll(m -> Matcher.quoteReplacement(
+                Character.toString(Integer.parseInt(m.group(1)))));
+            s = NAMED_ENTITY.matcher(s).replaceAll(m -> MARKUP_ENTITIES.contains(m.group(1) + m.group(2)) ? " "
+                                                                                                      : m.group(1));
+        }
+        
+        if (!s.chars().allMatch(c -> c < 0x80)) {
+            s = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        }
+        
+        return s;
+    }
+    
+    //
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.*;
+import java.net.*;
+import java.net.http.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.zip.*;
+
+public class Transport {
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    
+    /* 
+     * Constructor for Transport class
+     * one HttpClient shared by every request of the run: it keeps connections to each host open & reuses them
+     * (keep-alive), & speaks HTTP/2 to https servers that offer it (negotiated in the TLS handshake), multiplexing
+     * requests over one connection; plain http is sent as HTTP/1.1 (see request()), as an h2c Upgrade on every
+     * new connection is wasted on most servers & trips up some
+     * redirects are followed the way HttpURLConnection did (except https -> http)
+     * takes in: Duration connectTimeout (to open a connection), Duration requestTimeout (for a whole response)
+     */
+    public Transport(Duration connectTimeout, Duration requestTimeout) {
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(connectTimeout)
+            .build();
+        this.requestTimeout = requestTimeout;
+    }
+    
+    // Transport with a 10 s connect timeout & 30 s request timeout
+    public Transport() {
+        this(Duration.ofSeconds(10), Duration.ofSeconds(30));
+    }
+    
+    /* 
+     * send a GET offering a gzip or deflate body (Accept-Encoding) & return as soon as the headers are in
+     * the body is left on the connection for the caller to read (through decoded()) & close;
+     * closing it early gives the connection back without reading the rest
+     * takes in: String url, Map<String, String> headers (extra request headers, e.g. validators)
+     * returns: HttpResponse with the body as a stream of the bytes on the wire (whatever the status)
+     */
+    public HttpResponse<InputStream> get(String url, Map<String, String> headers) throws IOException {
+        return send(request(url, headers).header("Accept-Encoding", "gzip, deflate").GET(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+    }
+    
+    /* 
+     * send a HEAD; there is no body to read
+     * no Accept-Encoding is sent, so Content-Length is the size of the file itself, not of a compressed copy
+     * takes in: String url, Map<String, String> headers
+     * returns: HttpResponse (status & headers only)
+     */
+    public HttpResponse<Void> head(String url, Map<String, String> headers) throws IOException {
+        return send(request(url, headers).method("HEAD", HttpRequest.BodyPublishers.noBody()),
+                    HttpResponse.BodyHandlers.discarding());
+    }
+    
+    /* 
+     * undo the response's Content-Encoding as body is read, without buffering it:
+     *    none / identity: body as it is
+     *    gzip: GZIPInputStream
+     *    deflate: InflaterInputStream, for zlib data (what the spec says) or the raw deflate some servers send
+     * any other encoding is an IOException (we never offer one)
+     * takes in: HttpResponse response (for its headers), InputStream body (the bytes on the wire)
+     * returns: InputStream of the decompressed body; closing it closes body
+     */
+    public static InputStream decoded(HttpResponse<?> response, InputStream body) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").strip().toLowerCase(Locale.ROOT);
+        
+        return switch (encoding) {
+            case "", "identity" -> body;
+            case "gzip", "x-gzip" -> new GZIPInputStream(body, 8192);
+            case "deflate" -> inflating(new BufferedInputStream(body, 8192));
+            default -> throw new IOException("unsupported Content-Encoding " + encoding + " from " + response.uri());
+        };
+    }
+    
+    /* 
+     * inflate a deflate body, telling zlib-wrapped data from raw deflate by its 2-byte header
+     * (compression method 8 & a header that is a multiple of 31); the Inflater is released on close
+     * takes in: BufferedInputStream body
+     * returns: InputStream
+     */
+    private static InputStream inflating(BufferedInputStream body) throws IOException {
+        body.mark(2);
+        int cmf = body.read();
+        int flg = body.read();
+        body.reset();
+        
+        boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        Inflater inflater = new Inflater(!zlib);
+        
+        return new InflaterInputStream(body, inflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+    
+    /* 
+     * request builder for url with the request timeout & headers applied; an http:// url is pinned to HTTP/1.1
+     * takes in: String url, Map<String, String> headers
+     * returns: HttpRequest.Builder
+     */
+    private HttpRequest.Builder request(String url, Map<String, String> headers) throws IOException {
+        URI uri;
+        
+        try {
+            uri = new URI(url);
+        }
+        catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(this.requestTimeout);
+        
+        if ("http".equalsIgnoreCase(uri.getScheme())) {
+            builder.version(HttpClient.Version.HTTP_1_1);
+        }
+        
+        headers.forEach(builder::header);
+        return builder;
+    }
+    
+    /* 
+     * send request on the shared client & wait for the response; an interrupt is rethrown as InterruptedIOException
+     * takes in: HttpRequest.Builder request, BodyHandler handler
+     * returns: HttpResponse
+     */
+    private <T> HttpResponse<T> send(HttpRequest.Builder request,
+                                     HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return this.client.send(request.build(), handler);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for " + request.build().uri());
+        }
+    }
+}
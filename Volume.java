@@ -49,4 +49,4 @@ public class Volume {
     public String getTitle() { return this.title; }
     public Article[] getArticles() { return this.articles; }
     public int[] getFileIDs() { return this.fileIDs; }
-}
\ No newline at end of file
+}
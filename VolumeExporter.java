@@ -0,0 +1,242 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+import java.util.zip.*;
+
+public class VolumeExporter {
+    public static final String CHECKSUMS = "SHA256SUMS";
+    
+    private final int parallelism;
+    private final XmlValidator validator;
+    
+    /* 
+     * Constructor for VolumeExporter class
+     * volumes are independent once file ids & author ids are fixed, so each one is rendered & written on its own task
+     * with a validator each volume is checked against the schema as it is written; one that doesn't match is a Failure
+     * takes in: int parallelism (max volumes exported at once; 1 exports them one after another on the calling thread),
+     *           XmlValidator validator (may be null)
+     */
+    public VolumeExporter(int parallelism, XmlValidator validator) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        
+        this.parallelism = parallelism;
+        this.validator = validator;
+    }
+    
+    // VolumeExporter that doesn't validate
+    public VolumeExporter(int parallelism) {
+        this(parallelism, null);
+    }
+    
+    /* 
+     * render every volume of journal with toXml() & save it to outputPath(volume number)
+     * with parallelism > 1 the volumes are spread over a pool of that many threads; each file's content
+     * does not depend on the order they are written in (the journal fixes the ids & the creation date), so the
+     * files are the same as a sequential export
+     * the rendering threads only render: each document goes to one OutputWriter (write-behind, at most
+     * 2 * parallelism documents queued) that replaces the files atomically & leaves unchanged ones alone,
+     * so the disk writes & syncs overlap the rendering of the next volumes
+     * a volume that fails is recorded & the rest carry on; nothing is thrown
+     * listener (if not null) is shown each file before it is replaced (see OutputWriter.Listener)
+     * takes in: Journal journal, IntFunction<Path> outputPath, OutputWriter.Listener listener (may be null)
+     * returns: List of Failure, in volume order (empty if every volume was written)
+     */
+    public List<Failure> export(Journal journal, IntFunction<Path> outputPath, OutputWriter.Listener listener) {
+        Volume[] volumes = journal.getVolumes();
+        ArrayList<CompletableFuture<Boolean>> writes = new ArrayList<>(volumes.length);
+        OutputWriter writer = new OutputWriter(2 * this.parallelism, listener);
+        
+        try {
+            if (this.parallelism == 1 || volumes.length < 2) {
+                for (Volume volume : volumes) {
+                    writes.add(exportVolume(journal, volume, outputPath, this.validator, writer));
+                }
+            }
+            else {
+                renderPooled(journal, volumes, outputPath, writer, writes);
+            }
+        }
+        finally {
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                // interrupted: the writer still finishes every queued file, so the waits below end
+            }
+        }
+        
+        ArrayList<Failure> failures = new ArrayList<>();
+        
+        for (int i = 0; i < volumes.length; i++) {
+            Failure failure = awaitWrite(writes.get(i), volumes[i].getVolume());
+            
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        
+        return failures;
+    }
+    
+    // export without a listener
+    public List<Failure> export(Journal journal, IntFunction<Path> outputPath) {
+        return export(journal, outputPath, null);
+    }
+    
+    /* 
+     * render volumes on a pool of parallelism threads, adding each one's pending write to writes in volume order
+     * takes in: Journal journal, Volume[] volumes, IntFunction<Path> outputPath, OutputWriter writer,
+     *           List<CompletableFuture<Boolean>> writes
+     */
+    private void renderPooled(Journal journal, Volume[] volumes, IntFunction<Path> outputPath, OutputWriter writer,
+                              List<CompletableFuture<Boolean>> writes) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(this.parallelism, volumes.length), r -> {
+            Thread t = new Thread(r, "exporter");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        try {
+            ArrayList<Future<CompletableFuture<Boolean>>> results = new ArrayList<>(volumes.length);
+            
+            for (Volume volume : volumes) {
+                results.add(pool.submit(() -> exportVolume(journal, volume, outputPath, this.validator, writer)));
+            }
+            
+            for (Future<CompletableFuture<Boolean>> result : results) {
+                writes.add(awaitRender(result));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+    
+    /* 
+     * render every volume of journal straight into one zip bundle at path, as entry entryName(volume number),
+     * then add a CHECKSUMS entry: one "sha256  name" line per volume (the sha256sum format, so an unpacked
+     * bundle can be checked with sha256sum -c)
+     * each document is streamed through the checksum & the entry's deflater into the bundle as it is rendered:
+     * no document is held whole & nothing is written to disk but the compressed bundle
+     * (a zip entry can be streamed because its sizes & CRC follow its data; a tar header needs the size first)
+     * the volumes go in one after another in volume order, since a zip is written front to back; parallelism is unused
+     * the bundle is written to a temp file & renamed over path, so a failed export leaves the previous bundle in place
+     * a volume that fails validation or rendering is recorded as a Failure & kept in the bundle (to look at), like
+     * a loose file; an error writing the bundle itself is thrown
+     * takes in: Journal journal, Path path, IntFunction<String> entryName
+     * returns: List of Failure, in volume order (empty if every volume was written)
+     */
+    public List<Failure> exportBundle(Journal journal, Path path, IntFunction<String> entryName) throws IOException {
+        ArrayList<Failure> failures = new ArrayList<>();
+        StringBuilder checksums = new StringBuilder();
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)),
+                                                           StandardCharsets.UTF_8)) {
+                for (Volume volume : journal.getVolumes()) {
+                    String name = entryName.apply(volume.getVolume());
+                    long start = System.nanoTime();
+                    MessageDigest sha256 = sha256();
+                    // the entry is closed here, not by closing the writer (which would close the whole bundle)
+                    Writer out = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(zip, sha256),
+                                                                           StandardCharsets.UTF_8));
+                    ZipEntry entry = new ZipEntry(name);
+                    Exception error = null;
+                    zip.putNextEntry(entry);
+                    
+                    try {
+                        journal.toXml(volume).writeTo(out, name, this.validator);
+                    }
+                    catch (IOException | RuntimeException e) {
+                        error = e;
+                    }
+                    
+                    out.flush();
+                    zip.closeEntry();
+                    checksums.append(HexFormat.of().formatHex(sha256.digest())).append("  ").append(name).append('\n');
+                    Metrics.observe("volume.write", System.nanoTime() - start);
+                    Metrics.count("bytes.xml", entry.getSize());
+                    
+                    if (error != null) {
+                        failures.add(new Failure(volume.getVolume(), error));
+                    }
+                }
+                
+                zip.putNextEntry(new ZipEntry(CHECKSUMS));
+                zip.write(checksums.toString().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Metrics.count("bytes.bundle", Files.size(path));
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+        
+        return failures;
+    }
+    
+    /* 
+     * render one volume (validating it if validator is not null) & queue it with writer
+     * takes in: Journal journal, Volume volume, IntFunction<Path> outputPath, XmlValidator validator,
+     *           OutputWriter writer
+     * returns: the volume's pending write (see XmlDocument.saveToFile), already failed if it couldn't be rendered
+     */
+    private static CompletableFuture<Boolean> exportVolume(Journal journal, Volume volume, IntFunction<Path> outputPath,
+                                                           XmlValidator validator, OutputWriter writer) {
+        try {
+            return journal.toXml(volume).saveToFile(outputPath.apply(volume.getVolume()), validator, writer);
+        }
+        catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    // pending write of one pooled render; an interrupted wait or an Error thrown by the task fails it
+    private static CompletableFuture<Boolean> awaitRender(Future<CompletableFuture<Boolean>> result) {
+        try {
+            return result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        catch (ExecutionException e) {
+            return CompletableFuture.failedFuture(e.getCause());
+        }
+    }
+    
+    // null once volume's file is written (or found unchanged), otherwise a Failure holding what went wrong
+    private static Failure awaitWrite(CompletableFuture<Boolean> write, int volume) {
+        try {
+            write.join();
+            return null;
+        }
+        catch (CompletionException e) {
+            return new Failure(volume, e.getCause() instanceof Exception cause ? cause : e);
+        }
+    }
+    
+    // a fresh SHA-256 digest (every JDK has it)
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    // volume that could not be exported & the exception that stopped it
+    public record Failure(int volume, Exception error) {}
+}
@@ -1,29 +1,69 @@
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.*;
 
 public class XmlDocument {
     private static final String W3_SCHEMA = "http://www.w3.org/2001/XMLSchema-instance";
-    private static final String PKP_HOME = "https://pkp.sfu.ca";
+    private static final String PKP_HOME = "http://pkp.sfu.ca";
+    
+    // bump whenever the rendered XML changes, so Manifest stops trusting files written by older code
+    public static final int OUTPUT_VERSION = 3;
+    
+    // constant pieces of the document, joined once here instead of formatted for every article
+    private static final String SCHEMA_LOCATION = "xsi:schemaLocation=\"" + PKP_HOME + " native.xsd\">\n";
+    private static final String XSI = "xmlns:xsi=\"" + W3_SCHEMA + "\" ";
+    private static final String DOC_OPEN = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+        + "<articles xmlns=\"" + PKP_HOME + "\" " + XSI + SCHEMA_LOCATION;
+    private static final String DOC_CLOSE = "</articles>";
+    private static final String ARTICLE_OPEN = "\s\s<article xmlns=\"" + PKP_HOME + "\" " + XSI
+        + "locale=\"en\" date_submitted=\"";
+    private static final String ARTICLE_OPEN_END = "\" status=\"3\" "
+        + "submission_progress=\"\" current_publication_id=\"1\" stage=\"production\" " + SCHEMA_LOCATION;
+    private static final String INTERNAL_ID = "<id type=\"internal\" advice=\"ignore\">";
+    private static final String ID_CLOSE = "</id>\n";
+    private static final String SUBMISSION_FILE_OPEN = "\s\s\s\s<submission_file " + XSI + "id=\"";
+    private static final String INDENT_2 = "\s\s\s\s";
+    private static final String INDENT_3 = "\s\s\s\s\s\s";
+    private static final String INDENT_4 = "\s\s\s\s\s\s\s\s";
+    private static final String PUBLICATION_OPEN = "\s\s\s\s<publication " + XSI
+        + "version=\"1\" status=\"3\" primary_contact_id=\"";
+    private static final String PUBLICATION_TAIL = "\n"
+        + INDENT_3 + "<licenseUrl>http://www.tac.mta.ca/tac/consent.html</licenseUrl>\n"
+        + INDENT_3 + "<copyrightHolder locale=\"en\">author</copyrightHolder>\n"
+        + INDENT_3 + "<copyrightYear>";
+    private static final String AUTHORS_OPEN = INDENT_3 + "<authors " + XSI + SCHEMA_LOCATION;
+    private static final String AUTHOR_OPEN = INDENT_4 + "<author include_in_browse=\"true\" "
+        + "user_group_ref=\"Author\" seq=\"";
+    private static final String AUTHOR_CLOSE = "\s\s\s\s\s\s\s\s\s\s<email>madeup@email.org</email>\n"
+        + INDENT_4 + "</author>\n";
+    private static final String GALLEY_OPEN = INDENT_3 + "</authors>\n"
+        + INDENT_3 + "<article_galley " + XSI + "locale=\"en\" url_path=\"\" approved=\"false\" " + SCHEMA_LOCATION
+        + INDENT_4 + INTERNAL_ID;
+    private static final String ARTICLE_CLOSE = "\s\s\s\s</publication>\n\s\s</article>\n";
     
     private final Volume volume;
     private final HashMap<String, Integer> authorIDs;
     private final String dateCreated;
-    private final String document;
     
     /* 
      * Constructor fro XMLDocument
-     * assigns volume & authorIDs paramters to respective fields of the class
-     * assigns initDateCreated() value to dateCreated field
-     * assigns buildDocument() value to document field
-     * takes in: Volume obj volume, HashMap<Author, AuthorID> obj authorIDs
+     * assigns volume, authorIDs & dateCreated paramters to respective fields of the class
+     * nothing is rendered here; writeTo() streams the document when it is saved
+     * takes in: Volume obj volume, HashMap<Author, AuthorID> obj authorIDs, String dateCreated (YYYY-MM-DD)
      */
-    public XmlDocument(Volume volume, HashMap<String, Integer> authorIDs) {
+    public XmlDocument(Volume volume, HashMap<String, Integer> authorIDs, String dateCreated) {
         this.volume = volume;
         this.authorIDs = authorIDs;
-        this.dateCreated = initDateCreated();
-        this.document = buildDocument();
+        this.dateCreated = dateCreated;
+    }
+    
+    // XmlDocument dated today (initDateCreated())
+    public XmlDocument(Volume volume, HashMap<String, Integer> authorIDs) {
+        this(volume, authorIDs, initDateCreated());
     }
     
     // returns volume field data
@@ -31,31 +71,184 @@ public class XmlDocument {
         return this.volume.getVolume();
     }
     
+    // saveToFile without schema validation
+    public void saveToFile(String path) throws IOException {
+        saveToFile(path, null);
+    }
+    
     /* 
-     * create a new file @ path from String path, create parent directories & write document field data to file
-     * takes in: String path
+     * save the document to path & wait for it: saveToFile(path, validator, writer) over a writer of its own
+     * takes in: String path, XmlValidator validator (null skips validation)
      */
-    public void saveToFile(String path) throws IOException {
-        File file = new File(path);
-        file.getParentFile().mkdirs();
-        file.createNewFile();
-        Files.writeString(file.toPath(), this.document);
+    public void saveToFile(String path, XmlValidator validator) throws IOException {
+        CompletableFuture<Boolean> written;
+        
+        try (OutputWriter writer = new OutputWriter(1)) {
+            written = saveToFile(Path.of(path), validator, writer);
+        }
+        
+        try {
+            written.join();
+        }
+        catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+    
+    /* 
+     * stream the document (UTF-8) into a temp file next to path & hand it to writer to replace the file at path
+     * (see OutputWriter): the temp file is hashed as it is written, & the writer's thread renames it over path
+     * (forced, atomically) or deletes it if the bytes are unchanged, while this thread renders the next document
+     * with a validator the document is checked against its schema while it is rendered (see XmlValidator);
+     * a document that doesn't match is still written (to look at) but the returned future fails with an IOException
+     * listing each problem's line, column & article
+     * the render time goes into the "volume.render" histogram & the document's size into the "bytes.xml" counter
+     * takes in: Path path, XmlValidator validator (null skips validation), OutputWriter writer
+     * returns: CompletableFuture: true once the file is written, false if it already held this document,
+     *          exceptionally if the write or the validation failed
+     */
+    public CompletableFuture<Boolean> saveToFile(Path path, XmlValidator validator,
+                                                 OutputWriter writer) throws IOException {
+        long start = System.nanoTime();
+        OutputWriter.TempFile temp = new OutputWriter.TempFile(path);
+        IOException invalid = null;
+        
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(temp, StandardCharsets.UTF_8));
+            
+            try {
+                writeTo(out, path.getFileName().toString(), validator);
+            }
+            catch (IOException e) {
+                if (temp.failed()) {
+                    throw e;
+                }
+                
+                // the temp file took every byte, so this is the validator's verdict on a whole document
+                invalid = e;
+            }
+            
+            out.flush();
+        }
+        catch (IOException | RuntimeException e) {
+            temp.discard();
+            throw e;
+        }
+        
+        Metrics.observe("volume.render", System.nanoTime() - start);
+        Metrics.count("bytes.xml", temp.size());
+        CompletableFuture<Boolean> written = writer.submit(path, temp);
+        
+        if (invalid == null) {
+            return written;
+        }
+        
+        IOException problems = invalid;
+        return written.thenCompose(w -> CompletableFuture.failedFuture(problems));
+    }
+    
+    /* 
+     * writeTo(out), checking the document against validator's schema on the way if validator is not null
+     * (see saveToFile); out is flushed but not closed
+     * takes in: Writer out, String name (the document's file name, for messages), XmlValidator validator (may be null)
+     */
+    public void writeTo(Writer out, String name, XmlValidator validator) throws IOException {
+        if (validator == null) {
+            writeTo(out);
+            return;
+        }
+        
+        try (XmlValidator.Session session = validator.open(out, name)) {
+            writeTo(session);
+        }
     }
     
     /* 
      * Overrides Java toString()
-     * return val of document field as String; XML doc to String
+     * renders the whole XML doc into a String (writeTo a StringWriter); meant for debugging & small volumes
      */
     @Override
     public String toString() {
-        return this.document;
+        StringWriter out = new StringWriter();
+        
+        try {
+            writeTo(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        return out.toString();
+    }
+    
+    /* 
+     * stream the XML doc to out one element at a time, nothing is held in memory beyond the current article
+     * write the XML declaration & root elem, then the XML block of every article of the volume
+     * (passing the current article, fileID & sequence in volume), separated by blank lines, then the closing </articles>
+     * if out is a validator Session, it is told where each article starts so problems can be traced to it
+     * out is flushed but not closed
+     * takes in: Writer out
+     */
+    public void writeTo(Writer out) throws IOException {
+        out.write(DOC_OPEN);
+        
+        Article[] articles = this.volume.getArticles();
+        int fileID = this.volume.getFileIDs()[0];
+        
+        for (int i = 0; i < articles.length; i++) {
+            if (i > 0) {
+                out.write('\n');
+            }
+            
+            if (out instanceof XmlValidator.Session session) {
+                session.startArticle(articleLabel(i));
+            }
+            
+            writeXmlBlock(out, articles[i], fileID + i, i);
+        }
+        
+        out.write(DOC_CLOSE);
+        out.flush();
+    }
+    
+    // "article N (file id F, pages S-E)" for article i, to say where a validation problem is
+    public String articleLabel(int i) {
+        Article article = this.volume.getArticles()[i];
+        return String.format("article %d (file id %d, pages %d-%d)", i + 1, this.volume.getFileIDs()[0] + i,
+                             article.getStartPage(), article.getEndPage());
+    }
+    
+    /* 
+     * write a document of already rendered article blocks (as writeTo writes them) in the same envelope as writeTo:
+     * declaration, root elem, the blocks separated by blank lines, closing </articles>
+     * if out is a validator Session, it is told where each block starts (labels, index-aligned with blocks)
+     * out is flushed but not closed
+     * takes in: Writer out, List<String> blocks, List<String> labels
+     */
+    static void writeArticles(Writer out, List<String> blocks, List<String> labels) throws IOException {
+        out.write(DOC_OPEN);
+        
+        for (int i = 0; i < blocks.size(); i++) {
+            if (i > 0) {
+                out.write('\n');
+            }
+            
+            if (out instanceof XmlValidator.Session session) {
+                session.startArticle(labels.get(i));
+            }
+            
+            out.write(blocks.get(i));
+        }
+        
+        out.write(DOC_CLOSE);
+        out.flush();
     }
     
     /* 
      * assign ZonedDateTime obj now to current Date & Time
      * returns string of Date in format YYYY-MM-DD
      */
-    private String initDateCreated() {
+    static String initDateCreated() {
         ZonedDateTime now = ZonedDateTime.now();
         return String.format("%d-%02d-%02d",
                              now.getYear(),
@@ -64,153 +257,218 @@ public class XmlDocument {
     }
     
     /* 
-     * append XML details, schema instance & schema location to appropriately set up root elem of XML doc to doc StringBuilder
-     * assign volume's articles and fileIDs to Article[] and fileID int respectively
-     * loop through article objects in article & append XML block created upon calling buildXmlBlock() and passing the current article, fileID & sequence in volume
-     * add a new line string after every created XML block then increment 
-     * delete last elem of doc and replace with closing XML tag </articles>
-     * returns: Stringified doc
+     * the XML block for one article as a String (see writeXmlBlock)
+     * takes in: Article obj article, Int fileID, Int seqInVol
+     * returns: XML String
      */
-    private String buildDocument() {
-        StringBuilder doc = new StringBuilder(192000);
-        doc.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
-        doc.append(String.format("<articles xmlns:xsi=\"%s\" ", W3_SCHEMA));
-        doc.append(String.format("xsi:schemaLocation=\"%s native.xsd\">\n", PKP_HOME));
-        
-        Article[] articles = this.volume.getArticles();
-        int fileID = this.volume.getFileIDs()[0];
-        int i = 0;
+    String buildXmlBlock(Article article, int fileID, int seqInVol) {
+        StringWriter block = new StringWriter(3200);
         
-        for (Article article : articles) {
-            doc.append(buildXmlBlock(article, fileID + i, i)).append("\n");
-            i++;
+        try {
+            writeXmlBlock(block, article, fileID, seqInVol);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         
-        doc.delete(doc.length() - 1, doc.length()).append("</articles>");
-        return doc.toString();
+        return block.toString();
     }
     
     /* 
-     * append various metadata elems (i.e. authors, keywords, publication info, etc) based on XML best practices for OJS to a stringBuilder `sb`
-     * takes in: Article obj article, Int fileID, Int seqInVol
-     * returns: XML String
+     * write various metadata elems (i.e. authors, keywords, publication info, etc) based on XML best practices for OJS to out
+     * constant markup comes from the precomputed fragments above; numbers are written directly
+     * & every piece of article text (names, titles, abstract, keywords, urls) goes through escape()
+     * takes in: Writer out, Article obj article, Int fileID, Int seqInVol
      */
-    private String buildXmlBlock(Article article, int fileID, int seqInVol) {
+    private void writeXmlBlock(Writer out, Article article, int fileID, int seqInVol) throws IOException {
         String[] authors = article.getAuthors();
-        StringBuilder block = new StringBuilder(3200);
-        
-        block.append(String.format("\s\s<article xmlns=\"%s\" ", PKP_HOME))
-            .append(String.format("xmlns:xsi=\"%s\" locale=\"en\" ", W3_SCHEMA))
-            .append(String.format("date_submitted=\"%s\" status=\"3\" ", dateCreated))
-            .append("submission_progress=\"\" current_publication_id=\"1\" stage=\"production\" ")
-            .append(String.format("xsi:schemaLocation=\"%s native.xsd\">\n", PKP_HOME));
-        
-        block.append("\s\s\s\s<id type=\"internal\" advice=\"ignore\">")
-            .append(String.format("%d</id>\n", fileID));
-        
-        block.append("\s\s\s\s<submission_file ")
-            .append(String.format("xmlns:xsi=\"%s\" id=\"%d\"", W3_SCHEMA, fileID))
-            .append(String.format("created_at=\"%s\" date_created=\"\" ", dateCreated))
-            .append(String.format("file_id=\"%d\" stage=\"submission\" ", fileID))
-            .append(String.format("updated_at=\"%s\" viewable=\"true\" ", dateCreated))
-            .append("genre=\"Article Text\" ")
-            .append(String.format("source_submission_file_id=\"%d\" ", fileID))
-            .append("uploader=\"admin\" ")
-            .append(String.format("xsi:schemaLocation=\"%s native.xsd\">\n", PKP_HOME));
-        
-        block.append("\s\s\s\s\s\s<name locale=\"en\">")
-            .append(String.format("%s</name>\n", article.getName()));
-        block.append(String.format("\s\s\s\s\s\s<file id=\"%d\" ", fileID))
-            .append(String.format("filesize=\"%d\" ", article.getFileSize()))
-            .append("extension=\"pdf\">\n");
-        block.append("\s\s\s\s\s\s\s\s<href src=")
-            .append(String.format("\"%s\"/>\n", article.getPdfSource()));
-        block.append("\s\s\s\s\s\s</file>\n");
-        block.append("\s\s\s\s</submission_file>\n");
-        
-        block.append(String.format("\s\s\s\s<publication xmlns:xsi=\"%s\" ", W3_SCHEMA))
-            .append("version=\"1\" status=\"3\" ")
-            .append("primary_contact_id=")
-            .append(String.format("\"%d\" url_path=\"\" ", this.authorIDs.get(authors[0])))
-            .append(String.format("seq=\"%d\" access_status=\"0\" ", seqInVol))
-            .append(String.format("date_published=\"%s\" section_ref=\"ART\" ", dateCreated))
-            .append(String.format("xsi:schemaLocation=\"%s native.xsd\">\n", PKP_HOME));
-        
-        block.append("\s\s\s\s\s\s<id type=\"internal\" advice=\"ignore\">")
-            .append(String.format("%d</id>\n", fileID));
-        block.append("\s\s\s\s\s\s<id type=\"doi\" advice=\"update\">10.1119/5.0158200</id>\n");
-        block.append("\s\s\s\s\s\s<title locale=\"en\">")
-            .append(String.format("%s</title>\n", article.getTitle()));
-        block.append("\s\s\s\s\s\s<abstract locale=\"en\">")
-            .append(String.format("%s</abstract>\n", article.getAbstract()));
-        block.append("\s\s\s\s\s\s<licenseURL>http://www.tac.mta.ca/tac/consent.html")
-            .append("</licenseURL>\n");
-        block.append("\s\s\s\s\s\s<copyrightHolder locale=\"en\">author</copyrightHolder>\n");
-        block.append("\s\s\s\s\s\s<copyrightYear>")
-            .append(String.format("%d</copyrightYear>\n", this.volume.getYear()));
-        
-        block.append("\s\s\s\s\s\s<keywords locale=\"en\">\n");
-        
-        for (String keyword : article.getKeywords()) {
-            block.append(String.format("\s\s\s\s\s\s\s\s<keyword>%s</keyword>\n", keyword));
-        }
-        
-        block.append("\s\s\s\s\s\s</keywords>\n");
-        
-        block.append(String.format("\s\s\s\s\s\s<authors xmlns:xsi=\"%s\" ", W3_SCHEMA))
-            .append(String.format("xsi:schemaLocation=\"%s native.xsd\">\n", PKP_HOME));
+        String id = Integer.toString(fileID);
+        
+        out.write(ARTICLE_OPEN);
+        out.write(this.dateCreated);
+        out.write(ARTICLE_OPEN_END);
+        
+        out.write(INDENT_2);
+        out.write(INTERNAL_ID);
+        out.write(id);
+        out.write(ID_CLOSE);
+        
+        out.write(SUBMISSION_FILE_OPEN);
+        out.write(id);
+        out.write("\" created_at=\"");
+        out.write(this.dateCreated);
+        out.write("\" date_created=\"\" file_id=\"");
+        out.write(id);
+        out.write("\" stage=\"submission\" updated_at=\"");
+        out.write(this.dateCreated);
+        out.write("\" viewable=\"true\" genre=\"Article Text\" source_submission_file_id=\"");
+        out.write(id);
+        out.write("\" uploader=\"admin\" ");
+        out.write(SCHEMA_LOCATION);
+        
+        out.write(INDENT_3);
+        out.write("<name locale=\"en\">");
+        escape(out, article.getName());
+        out.write("</name>\n");
+        out.write(INDENT_3);
+        out.write("<file id=\"");
+        out.write(id);
+        
+        // an unknown size (the probe failed, see FileSizeProber) is left out rather than written as -1;
+        // the schema requires it, so the volume fails validation & the article is named in the report
+        if (article.getFileSize() >= 0) {
+            out.write("\" filesize=\"");
+            out.write(Integer.toString(article.getFileSize()));
+        }
+        
+        out.write("\" extension=\"pdf\">\n");
+        out.write(INDENT_4);
+        out.write("<href src=\"");
+        escape(out, article.getPdfSource());
+        out.write("\"/>\n");
+        out.write(INDENT_3);
+        out.write("</file>\n");
+        out.write(INDENT_2);
+        out.write("</submission_file>\n");
+        
+        out.write(PUBLICATION_OPEN);
+        out.write(String.valueOf(this.authorIDs.get(authors[0])));
+        out.write("\" url_path=\"\" seq=\"");
+        out.write(Integer.toString(seqInVol));
+        out.write("\" access_status=\"0\" date_published=\"");
+        out.write(this.dateCreated);
+        out.write("\" section_ref=\"ART\" ");
+        out.write(SCHEMA_LOCATION);
+        
+        out.write(INDENT_3);
+        out.write(INTERNAL_ID);
+        out.write(id);
+        out.write(ID_CLOSE);
+        out.write(INDENT_3);
+        out.write("<id type=\"doi\" advice=\"update\">10.1119/5.0158200</id>\n");
+        out.write(INDENT_3);
+        out.write("<title locale=\"en\">");
+        escape(out, article.getTitle());
+        out.write("</title>\n");
+        out.write(INDENT_3);
+        out.write("<abstract locale=\"en\">");
+        escape(out, article.getAbstract());
+        out.write("</abstract>");
+        out.write(PUBLICATION_TAIL);
+        out.write(Integer.toString(this.volume.getYear()));
+        out.write("</copyrightYear>\n");
+        
+        String[] keywords = article.getKeywords();
+        
+        // the schema wants at least one <keyword> in a <keywords>, so an article without any gets none
+        if (keywords.length > 0) {
+            out.write(INDENT_3);
+            out.write("<keywords locale=\"en\">\n");
+            
+            for (String keyword : keywords) {
+                out.write(INDENT_4);
+                out.write("<keyword>");
+                escape(out, keyword);
+                out.write("</keyword>\n");
+            }
+            
+            out.write(INDENT_3);
+            out.write("</keywords>\n");
+        }
+        
+        out.write(AUTHORS_OPEN);
         int i = 0;
         
         for (String author : authors) {
             Author a = separateAuthorNames(author);
             
-            block.append("\s\s\s\s\s\s\s\s<author include_in_browse=\"true\" ")
-                .append(String.format("user_group_ref=\"Author\" seq=\"%d\" ", i++))
-                .append(String.format("id=\"%d\">\n", this.authorIDs.get(author)));
-            block.append("\s\s\s\s\s\s\s\s\s\s<givenname>")
-                .append(String.format("%s</givenname locale=\"en\">\n", a.givenName()));
-            block.append("\s\s\s\s\s\s\s\s\s<familyname locale=\"en\">")
-                .append(String.format("%s</surname>\n", a.familyName()));
-            block.append("\s\s\s\s\s\s\s\s\s\s<email>madeup@email.org</email>\n");
-            block.append("\s\s\s\s\s\s\s\s</author>\n");
-        }
-        
-        block.append("\s\s\s\s\s\s</authors>\n");
-        
-        block.append("\s\s\s\s\s\s<article_galley ")
-            .append(String.format("xmlns:xsi=\"%s\" locale=\"en\" url_path=\"\" ", W3_SCHEMA))
-            .append("approved=\"false\" ")
-            .append(String.format("xsi:schemaLocation=\"%s native.xsd\">\n", PKP_HOME));
-        block.append("\s\s\s\s\s\s\s\s<id type=\"internal\" advice=\"ignore\">")
-            .append(String.format("%d</id>\n", fileID));
-        block.append("\s\s\s\s\s\s\s\s<name locale=\"en\">PDF</name>\n");
-        block.append(String.format("\s\s\s\s\s\s\s\s<seq>%d</seq>\n", seqInVol));
-        block.append("\s\s\s\s\s\s\s\s<submission_file_ref ")
-            .append(String.format("id=\"%d\"/>\n", fileID));
-        block.append("\s\s\s\s\s\s</article_galley>\n");
-        
-        block.append("\s\s\s\s\s\s<issue_identification>\n");
-        block.append("\s\s\s\s\s\s\s\s<volume>")
-            .append(String.format("%d</volume>\n", this.volume.getVolume()));
-        block.append("\s\s\s\s\s\s\s\s<year>")
-            .append(String.format("%d</year>\n", this.volume.getYear()));
+            out.write(AUTHOR_OPEN);
+            out.write(Integer.toString(i++));
+            out.write("\" id=\"");
+            out.write(String.valueOf(this.authorIDs.get(author)));
+            out.write("\">\n");
+            out.write("\s\s\s\s\s\s\s\s\s\s<givenname locale=\"en\">");
+            escape(out, a.givenName());
+            out.write("</givenname>\n");
+            out.write("\s\s\s\s\s\s\s\s\s\s<familyname locale=\"en\">");
+            escape(out, a.familyName());
+            out.write("</familyname>\n");
+            out.write(AUTHOR_CLOSE);
+        }
+        
+        out.write(GALLEY_OPEN);
+        out.write(id);
+        out.write(ID_CLOSE);
+        out.write(INDENT_4);
+        out.write("<name locale=\"en\">PDF</name>\n");
+        out.write(INDENT_4);
+        out.write("<seq>");
+        out.write(Integer.toString(seqInVol));
+        out.write("</seq>\n");
+        out.write(INDENT_4);
+        out.write("<submission_file_ref id=\"");
+        out.write(id);
+        out.write("\"/>\n");
+        out.write(INDENT_3);
+        out.write("</article_galley>\n");
+        
+        out.write(INDENT_3);
+        out.write("<issue_identification>\n");
+        out.write(INDENT_4);
+        out.write("<volume>");
+        out.write(Integer.toString(this.volume.getVolume()));
+        out.write("</volume>\n");
+        out.write(INDENT_4);
+        out.write("<year>");
+        out.write(Integer.toString(this.volume.getYear()));
+        out.write("</year>\n");
         String volumeTitle = this.volume.getTitle();
         
         if (volumeTitle != null) {
-            block.append("\s\s\s\s\s\s\s\s<title locale=\"en\">")
-                .append(String.format("%s</title>\n", volumeTitle));
+            out.write(INDENT_4);
+            out.write("<title locale=\"en\">");
+            escape(out, volumeTitle);
+            out.write("</title>\n");
         }
         
-        block.append("\s\s\s\s\s\s</issue_identification>\n");
+        out.write(INDENT_3);
+        out.write("</issue_identification>\n");
+        
+        out.write(INDENT_3);
+        out.write("<pages>");
+        out.write(Integer.toString(article.getStartPage()));
+        out.write('-');
+        out.write(Integer.toString(article.getEndPage()));
+        out.write("</pages>\n");
         
-        block.append("\s\s\s\s\s\s<pages>")
-            .append(String.format("%d-%d", article.getStartPage(), article.getEndPage()))
-            .append("</pages>\n");
+        out.write(ARTICLE_CLOSE);
+    }
+    
+    /* 
+     * write text to out with the XML special chars replaced: & < > " become &amp; &lt; &gt; &quot;
+     * (safe for element text & attribute values); runs of ordinary chars are written in one call
+     * takes in: Writer out, String text
+     */
+    static void escape(Writer out, String text) throws IOException {
+        int start = 0;
         
-        block.append("\s\s\s\s</publication>\n");
-        block.append("\s\s</article>\n");
+        for (int i = 0; i < text.length(); i++) {
+            String entity = switch (text.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                default -> null;
+            };
+            
+            if (entity != null) {
+                out.write(text, start, i - start);
+                out.write(entity);
+                start = i + 1;
+            }
+        }
         
-        return block.toString();
+        out.write(text, start, text.length() - start);
     }
     
     /* 
@@ -225,4 +483,4 @@ public class XmlDocument {
 }
 
 // Author record to store givenName and familyName
-record Author(String givenName, String familyName) {}
\ No newline at end of file
+record Author(String givenName, String familyName) {}
@@ -0,0 +1,355 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.*;
+import org.xml.sax.*;
+
+public class XmlValidator {
+    private static final int CHUNK_SIZE = 8192;
+    private static final int QUEUED_CHUNKS = 8;
+    private static final int MAX_PROBLEMS = 20;
+    private static final char[] END = new char[0];
+    // Xerces work nothing here reads or needs (the schema has no ids, keys or element defaults); off, it halves the cost
+    private static final String[] UNUSED_FEATURES = {
+        "http://apache.org/xml/features/validation/schema/augment-psvi",
+        "http://apache.org/xml/features/validation/id-idref-checking",
+        "http://apache.org/xml/features/validation/identity-constraint-checking",
+        "http://apache.org/xml/features/validation/schema/element-default",
+        "http://apache.org/xml/features/validation/schema/normalized-value"
+    };
+    
+    private final String description;
+    private final Schema schema;
+    
+    /* 
+     * Constructor for XmlValidator class
+     * the schema is compiled once & shared: every Session gets its own (single-use) javax Validator from it
+     * takes in: String description (what the schema is, for messages), Schema schema
+     */
+    private XmlValidator(String description, Schema schema) {
+        this.description = description;
+        this.schema = schema;
+    }
+    
+    /* 
+     * compile the W3C XML schema at path (with anything it includes, relative to it)
+     * the schema/native.xsd checked in here is a hand-written, local approximation of the OJS 3.3 native import
+     * schema (only what XmlDocument writes, modelled on upstream but not copied from it), so a volume that passes
+     * it is not thereby known to be accepted by OJS; for that, load the upstream native.xsd with its includes
+     * takes in: Path path, String description (how messages name the schema, e.g. as an approximation)
+     * returns: XmlValidator
+     */
+    public static XmlValidator load(Path path, String description) throws IOException {
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException("no schema at " + path);
+        }
+        
+        try {
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            return new XmlValidator(description, factory.newSchema(path.toFile()));
+        }
+        catch (SAXException e) {
+            throw new IOException("could not read schema " + path + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /* 
+     * start validating a document while it is written to out
+     * everything written to the Session goes to out as usual & is also fed, in chunks, to a streaming (SAX) validator
+     * on its own thread, so the document is checked as it is produced & is never held whole, as text or as a DOM
+     * takes in: Writer out, String name (file name used in messages)
+     * returns: Session to write the document to; closing it waits for the verdict
+     */
+    public Session open(Writer out, String name) {
+        return new Session(out, name);
+    }
+    
+    /* 
+     * a document being written & validated
+     * the writing thread marks where each article starts (startArticle), so a problem is reported with its line,
+     * column & the article it falls in
+     * close() flushes what is left to the validator, waits for it & throws an IOException listing the problems
+     * (at most MAX_PROBLEMS, each once: Xerces reports some twice at the same spot; a document that is not
+     * well-formed stops at its first one); out is never closed
+     */
+    public class Session extends Writer {
+        private final Writer out;
+        private final String name;
+        private final ArrayBlockingQueue<char[]> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final ArrayList<Integer> articleLines = new ArrayList<>();
+        private final ArrayList<String> articleLabels = new ArrayList<>();
+        private final ArrayList<SAXParseException> problems = new ArrayList<>();
+        private final Thread thread;
+        private char[] chunk = new char[CHUNK_SIZE];
+        private int used = 0;
+        private int line = 1;
+        private volatile boolean finished = false;
+        private boolean closed = false;
+        private IOException failure;
+        
+        /* 
+         * Constructor for Session class
+         * starts the validator thread, which waits for the first chunk
+         * takes in: Writer out, String name
+         */
+        private Session(Writer out, String name) {
+            this.out = out;
+            this.name = name;
+            this.thread = new Thread(this::validate, "validator " + name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+        
+        /* 
+         * the next line written belongs to the article described by label (e.g. "article 3 (file id 17)")
+         * takes in: String label
+         */
+        public void startArticle(String label) {
+            this.articleLines.add(this.line);
+            this.articleLabels.add(label);
+        }
+        
+        // write to out & queue for the validator
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            this.out.write(cbuf, off, len);
+            
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - this.used);
+                System.arraycopy(cbuf, off, this.chunk, this.used, n);
+                advance(n);
+                off += n;
+                len -= n;
+            }
+        }
+        
+        // write to out & queue for the validator, without copying str into a char[] first
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            this.out.write(str, off, len);
+            
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - this.used);
+                str.getChars(off, off + n, this.chunk, this.used);
+                advance(n);
+                off += n;
+                len -= n;
+            }
+        }
+        
+        // flushes out; the validator gets whatever is buffered when a chunk fills or on close
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+        
+        /* 
+         * end the document, wait for the validator & throw if it found problems
+         * out is left open (the caller owns it)
+         */
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            
+            this.closed = true;
+            push(Arrays.copyOf(this.chunk, this.used));
+            push(END);
+            
+            try {
+                this.thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while validating " + this.name);
+            }
+            
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            
+            if (!this.problems.isEmpty()) {
+                throw new IOException(report());
+            }
+        }
+        
+        // count the lines in the n chars just copied to chunk & hand the chunk over once it is full
+        private void advance(int n) throws IOException {
+            for (int i = this.used; i < this.used + n; i++) {
+                if (this.chunk[i] == '\n') {
+                    this.line++;
+                }
+            }
+            
+            this.used += n;
+            
+            if (this.used == CHUNK_SIZE) {
+                push(this.chunk);
+                this.chunk = new char[CHUNK_SIZE];
+                this.used = 0;
+            }
+        }
+        
+        // queue chunk for the validator, blocking while it is behind; once it has stopped, chunks are dropped
+        private void push(char[] chunk) throws IOException {
+            try {
+                while (!this.finished) {
+                    if (this.chunks.offer(chunk, 50, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while validating " + this.name);
+            }
+        }
+        
+        /* 
+         * validator thread: run the queued chunks through a schema Validator (SAX, streaming), collecting problems
+         * the time it takes goes into the "volume.validate" histogram
+         */
+        private void validate() {
+            long start = System.nanoTime();
+            
+            try {
+                Validator validator = XmlValidator.this.schema.newValidator();
+                validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+                validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+                
+                for (String feature : UNUSED_FEATURES) {
+                    try {
+                        validator.setFeature(feature, false);
+                    }
+                    catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+                        // another JAXP implementation: it just does the extra work
+                    }
+                }
+                
+                validator.setErrorHandler(new ErrorHandler() {
+                    @Override
+                    public void warning(SAXParseException e) {}
+                    
+                    @Override
+                    public void error(SAXParseException e) throws SAXException {
+                        if (!Session.this.isRepeat(e)) {
+                            Session.this.problems.add(e);
+                        }
+                        
+                        if (Session.this.problems.size() >= MAX_PROBLEMS) {
+                            throw e;
+                        }
+                    }
+                    
+                    @Override
+                    public void fatalError(SAXParseException e) throws SAXException {
+                        Session.this.problems.add(e);
+                        throw e;
+                    }
+                });
+                validator.validate(new StreamSource(new ChunkReader(), this.name));
+            }
+            catch (SAXException e) {
+                // already in problems (the handler rethrows to stop at a fatal error or at MAX_PROBLEMS)
+            }
+            catch (IOException | RuntimeException e) {
+                this.failure = new IOException("could not validate " + this.name + ": " + e, e);
+            }
+            finally {
+                this.finished = true;
+                Metrics.observe("volume.validate", System.nanoTime() - start);
+            }
+        }
+        
+        /* 
+         * one line per problem: where it is (line, column, article) & the validator's message
+         * returns: String report
+         */
+        private String report() {
+            StringBuilder sb = new StringBuilder(this.name).append(" does not match ")
+                .append(XmlValidator.this.description);
+            
+            for (SAXParseException problem : this.problems) {
+                sb.append("\n    line ").append(problem.getLineNumber())
+                    .append(", column ").append(problem.getColumnNumber());
+                String article = articleAt(problem.getLineNumber());
+                
+                if (article != null) {
+                    sb.append(", ").append(article);
+                }
+                
+                sb.append(": ").append(problem.getMessage());
+            }
+            
+            if (this.problems.size() >= MAX_PROBLEMS) {
+                sb.append("\n    (stopped after ").append(MAX_PROBLEMS).append(" problems)");
+            }
+            
+            return sb.toString();
+        }
+        
+        // whether problem was already reported at the same line & column with the same message
+        private boolean isRepeat(SAXParseException problem) {
+            for (SAXParseException seen : this.problems) {
+                if (seen.getLineNumber() == problem.getLineNumber()
+                    && seen.getColumnNumber() == problem.getColumnNumber()
+                    && Objects.equals(seen.getMessage(), problem.getMessage())) {
+                    return true;
+                }
+            }
+            
+            return false;
+        }
+        
+        // label of the article line falls in, or null if it is before the first one
+        private String articleAt(int line) {
+            int i = Collections.binarySearch(this.articleLines, line);
+            
+            if (i < 0) {
+                i = -i - 2;
+            }
+            
+            return i < 0 ? null : this.articleLabels.get(i);
+        }
+        
+        // Reader the validator pulls the queued chunks through; END is end of file
+        private class ChunkReader extends Reader {
+            private char[] current = new char[0];
+            private int position = 0;
+            
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                
+                while (this.position == this.current.length) {
+                    if (this.current == END) {
+                        return -1;
+                    }
+                    
+                    try {
+                        this.current = Session.this.chunks.take();
+                        this.position = 0;
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                
+                int n = Math.min(len, this.current.length - this.position);
+                System.arraycopy(this.current, this.position, cbuf, off, n);
+                this.position += n;
+                return n;
+            }
+            
+            @Override
+            public void close() {}
+        }
+    }
+}